@@ -0,0 +1,59 @@
+package com.bosonshiggs.calculatecanvasarea.benchmarks;
+
+import com.bosonshiggs.calculatecanvasarea.geometry.AreaCalculator;
+import com.bosonshiggs.calculatecanvasarea.geometry.PointBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Closed-polygon area: the batch shoelace loop against the running sum the
+ * PointBuffer keeps up to date as points are added and undone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AreaBenchmark {
+    @Param({"100", "1000", "10000", "100000", "1000000"})
+    public int vertices;
+
+    private PointBuffer points;
+
+    @Setup
+    public void setUp() {
+        points = Shapes.buffer(Shapes.star(vertices, 1));
+    }
+
+    @Benchmark
+    public double batch() {
+        return AreaCalculator.calculateArea(points);
+    }
+
+    @Benchmark
+    public double running() {
+        return points.closedArea();
+    }
+
+    // Um quadro de traçado ao vivo: um ponto novo, a área, e o ponto desfeito
+    @Benchmark
+    public double addMeasureUndo() {
+        points.add(Shapes.CENTER, Shapes.CENTER + 1);
+        double area = points.closedArea();
+        points.removeLast();
+        return area;
+    }
+}
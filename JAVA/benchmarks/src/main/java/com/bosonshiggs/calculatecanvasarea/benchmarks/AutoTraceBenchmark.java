@@ -0,0 +1,110 @@
+package com.bosonshiggs.calculatecanvasarea.benchmarks;
+
+import com.bosonshiggs.calculatecanvasarea.geometry.ContourTracer;
+import com.bosonshiggs.calculatecanvasarea.geometry.Grayscale;
+import com.bosonshiggs.calculatecanvasarea.geometry.PointBuffer;
+import com.bosonshiggs.calculatecanvasarea.geometry.RasterMask;
+import com.bosonshiggs.calculatecanvasarea.geometry.StreamSimplifier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * AutoTraceRegion end to end on a synthetic photographed plan: a plot with
+ * a wavy border and a courtyard hole, in a noisy green, over a noisy beige
+ * background. The background layer is modelled as one int[] copied in
+ * 256-pixel tiles and 32-row bands, standing in for RasterScan's getPixels;
+ * each band is then classified by RasterMask.scanBand, the shipped code
+ * RasterScan runs, optionally in gray levels (AutoTraceGrayscale). Only the
+ * Android tile reads and the ForkJoin split are left out. Each call builds the
+ * mask, fills inside the plot, traces the outer contour and simplifies it to
+ * the ring's points.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class AutoTraceBenchmark {
+    private static final int TILE = 256, BAND_ROWS = 32;
+    private static final int TOLERANCE = 24;
+
+    @Param({"1920x1080", "3840x2160"})
+    public String canvas;
+
+    @Param({"false", "true"})
+    public boolean grayscale;
+
+    private int width, height;
+    private int[] image;
+    private int seedColor;
+    private final int[] pixels = new int[TILE * BAND_ROWS];
+    private final StreamSimplifier outline = new StreamSimplifier();
+    private final PointBuffer points = new PointBuffer();
+
+    @Setup
+    public void setUp() {
+        String[] size = canvas.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+
+        Random random = new Random(31);
+        image = new int[width * height];
+        double cx = width / 2.0, cy = height / 2.0, rx = width * 0.35, ry = height * 0.35;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double dx = (x - cx) / rx, dy = (y - cy) / ry;
+                double border = 1 + 0.08 * Math.sin(Math.atan2(dy, dx) * 7);
+                double r = dx * dx + dy * dy;
+                boolean plot = r < border && r > 0.04; // pátio no meio
+                int noise = random.nextInt(13) - 6;
+                image[y * width + x] = plot
+                        ? rgb(70 + noise, 140 + noise, 60 + noise)
+                        : rgb(200 + noise, 185 + noise, 150 + noise);
+            }
+        }
+        // Semente no terreno, à direita do pátio
+        int[] seed = {image[(int) cy * width + (int) (cx + rx * 0.6)]};
+        if (grayscale) Grayscale.convert(seed, 0, 1, Grayscale.REC601);
+        seedColor = seed[0];
+        outline.setTolerance(1.0);
+    }
+
+    @Benchmark
+    public int autoTrace() {
+        RasterMask mask = new RasterMask(width, height);
+        for (int y0 = 0; y0 < height; y0 += BAND_ROWS) {
+            int rows = Math.min(BAND_ROWS, height - y0);
+            for (int x0 = 0; x0 < width; x0 += TILE) {
+                int w = Math.min(TILE, width - x0);
+                // O arraycopy faz o papel do getPixels; a classificação é a mesma chamada do RasterScan
+                for (int r = 0; r < rows; r++) System.arraycopy(image, (y0 + r) * width + x0, pixels, r * w, w);
+                mask.scanBand(pixels, x0, y0, w, rows, seedColor, TOLERANCE, grayscale ? Grayscale.REC601 : null);
+            }
+        }
+        mask.floodFill((int) (width / 2.0 + width * 0.35 * 0.6), height / 2);
+        double[] contour = ContourTracer.trace(mask.filled(), width, height, mask.wordsPerRow);
+
+        points.clear();
+        outline.reset();
+        for (int i = 0; i < contour.length; i += 2) outline.add(points, contour[i], contour[i + 1]);
+        return points.size();
+    }
+
+    private static int rgb(int r, int g, int b) {
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+}
@@ -0,0 +1,131 @@
+package com.bosonshiggs.calculatecanvasarea.benchmarks;
+
+import com.bosonshiggs.calculatecanvasarea.geometry.Grayscale;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * ConvertToGrayscale on a synthetic 4000x3000 (12 MP) photo, with the
+ * bitmap modelled as a plain int[]. columnMajor is the old loop: one
+ * getPixel/setPixel per pixel, x outer and y inner. rowBands reads 32-row
+ * bands in bulk (getPixels), converts them and writes them back (setPixels)
+ * on one thread; parallelBands does the same split across a fork-join pool,
+ * as GrayscaleTask does. On a device every getPixel/setPixel is also a JNI
+ * call, so the gap there is wider than this JVM measurement shows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GrayscaleBenchmark {
+    private static final int WIDTH = 4000, HEIGHT = 3000;
+    private static final int BAND_ROWS = 32;
+
+    @Param({Grayscale.AVERAGE, Grayscale.REC709})
+    public String mode;
+
+    private int[] source, target;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        // Gradiente com ruído: nada constante que o JIT possa aproveitar
+        Random random = new Random(5);
+        source = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int r = (x * 255 / WIDTH + random.nextInt(16)) & 0xFF;
+                int g = (y * 255 / HEIGHT + random.nextInt(16)) & 0xFF;
+                int b = random.nextInt(256);
+                source[y * WIDTH + x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+        target = new int[WIDTH * HEIGHT];
+        pool = new ForkJoinPool();
+    }
+
+    @Benchmark
+    public int[] columnMajor() {
+        for (int x = 0; x < WIDTH; x++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                int pixel = getPixel(source, x, y);
+                int r = (pixel >> 16) & 0xFF, g = (pixel >> 8) & 0xFF, b = pixel & 0xFF;
+                int gray = (r + g + b) / 3;
+                setPixel(target, x, y, 0xFF000000 | (gray << 16) | (gray << 8) | gray);
+            }
+        }
+        return target;
+    }
+
+    @Benchmark
+    public int[] rowBands() {
+        convertRows(source, target, mode, 0, HEIGHT);
+        return target;
+    }
+
+    @Benchmark
+    public int[] parallelBands() {
+        pool.invoke(new BandTask(source, target, mode, 0, HEIGHT));
+        return target;
+    }
+
+    private static int getPixel(int[] bitmap, int x, int y) {
+        return bitmap[y * WIDTH + x];
+    }
+
+    private static void setPixel(int[] bitmap, int x, int y, int color) {
+        bitmap[y * WIDTH + x] = color;
+    }
+
+    // Uma faixa por vez: cópia para o buffer da faixa, conversão e cópia de volta
+    private static void convertRows(int[] src, int[] dst, String mode, int top, int bottom) {
+        int[] band = new int[WIDTH * BAND_ROWS];
+        for (int row = top; row < bottom; row += BAND_ROWS) {
+            int length = WIDTH * (Math.min(row + BAND_ROWS, bottom) - row);
+            System.arraycopy(src, row * WIDTH, band, 0, length);
+            Grayscale.convert(band, 0, length, mode);
+            System.arraycopy(band, 0, dst, row * WIDTH, length);
+        }
+    }
+
+    private static final class BandTask extends RecursiveAction {
+        private final int[] src, dst;
+        private final String mode;
+        private final int top, bottom;
+
+        BandTask(int[] src, int[] dst, String mode, int top, int bottom) {
+            this.src = src;
+            this.dst = dst;
+            this.mode = mode;
+            this.top = top;
+            this.bottom = bottom;
+        }
+
+        @Override
+        protected void compute() {
+            if (bottom - top <= BAND_ROWS) {
+                convertRows(src, dst, mode, top, bottom);
+                return;
+            }
+            int middle = (top + bottom) >>> 1;
+            invokeAll(new BandTask(src, dst, mode, top, middle), new BandTask(src, dst, mode, middle, bottom));
+        }
+    }
+}
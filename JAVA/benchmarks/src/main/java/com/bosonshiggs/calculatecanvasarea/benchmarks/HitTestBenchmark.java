@@ -0,0 +1,69 @@
+package com.bosonshiggs.calculatecanvasarea.benchmarks;
+
+import com.bosonshiggs.calculatecanvasarea.geometry.PointBuffer;
+import com.bosonshiggs.calculatecanvasarea.geometry.PolygonIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Point-in-polygon, reported per query point: the plain ray cast over every
+ * edge against the prepared band index (built once in setup, as with
+ * PreparedPolygon on).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HitTestBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({"100", "1000", "10000", "100000", "1000000"})
+    public int vertices;
+
+    private PointBuffer points;
+    private PolygonIndex index;
+    private double[] queries;
+
+    @Setup
+    public void setUp() {
+        points = Shapes.buffer(Shapes.star(vertices, 3));
+        queries = Shapes.queries(QUERIES, 4);
+        index = new PolygonIndex();
+        index.contains(points, 0, 0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int linear() {
+        int inside = 0;
+        for (int i = 0; i < queries.length; i += 2) {
+            if (PolygonIndex.containsLinear(points, queries[i], queries[i + 1])) inside++;
+        }
+        return inside;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int indexed() {
+        int inside = 0;
+        for (int i = 0; i < queries.length; i += 2) {
+            if (index.contains(points, queries[i], queries[i + 1])) inside++;
+        }
+        return inside;
+    }
+}
@@ -0,0 +1,101 @@
+package com.bosonshiggs.calculatecanvasarea.benchmarks;
+
+import com.bosonshiggs.calculatecanvasarea.geometry.PointBuffer;
+import com.bosonshiggs.calculatecanvasarea.geometry.StreamSimplifier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Stroke ingestion, reported per touch sample, for a 10k-sample trace
+ * recorded at 120 Hz. perSample is what one DrawLine per sample does on the
+ * geometry side: a stroke record, one point added and the measurement
+ * refreshed every sample. batched is DrawPolyline: the samples collected
+ * between two calls (2 per 60 Hz frame, 6 per 20 Hz Clock tick, 12 per
+ * 10 Hz tick) are copied into one stroke path, added in bulk and measured
+ * once. The Android-side cost of a bridge crossing and a redraw per call
+ * comes on top of this and is not modelled here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IngestionBenchmark {
+    private static final int SAMPLES = 10_000;
+
+    @Param({"2", "6", "12"})
+    public int samplesPerBatch;
+
+    @Param({"0", "1.5"})
+    public double tolerance;
+
+    private double[] trace;
+    private PointBuffer points;
+    private StreamSimplifier simplifier;
+
+    @Setup
+    public void setUp() {
+        trace = Shapes.trace(SAMPLES, 9);
+        points = new PointBuffer();
+        simplifier = new StreamSimplifier();
+        simplifier.setTolerance(tolerance);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public double perSample() {
+        points.clear();
+        double measured = 0;
+        for (int i = 1; i < SAMPLES; i++) {
+            float[] path = {(float) trace[i * 2 - 2], (float) trace[i * 2 - 1],
+                            (float) trace[i * 2], (float) trace[i * 2 + 1]};
+            add(trace[i * 2], trace[i * 2 + 1]);
+            measured += points.closedArea() + points.closedPerimeter() + path[3];
+        }
+        return measured;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public double batched() {
+        points.clear();
+        double measured = 0;
+        // O primeiro ponto de cada lote é o último do anterior (a posição atual da caneta)
+        for (int from = 0; from < SAMPLES - 1; from += samplesPerBatch) {
+            int to = Math.min(from + samplesPerBatch, SAMPLES - 1);
+            float[] path = new float[(to - from + 1) * 2];
+            for (int i = 0; i < path.length; i++) path[i] = (float) trace[from * 2 + i];
+            if (tolerance > 0) {
+                for (int i = from + 1; i <= to; i++) simplifier.add(points, trace[i * 2], trace[i * 2 + 1]);
+            } else {
+                double[] xy = new double[(to - from) * 2];
+                System.arraycopy(trace, (from + 1) * 2, xy, 0, xy.length);
+                points.addAll(xy, to - from);
+            }
+            measured += points.closedArea() + points.closedPerimeter() + path[1];
+        }
+        return measured;
+    }
+
+    private void add(double x, double y) {
+        if (tolerance > 0) {
+            simplifier.add(points, x, y);
+        } else {
+            points.add(x, y);
+        }
+    }
+}
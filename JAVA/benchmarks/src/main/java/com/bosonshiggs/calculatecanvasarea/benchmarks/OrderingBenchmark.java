@@ -0,0 +1,89 @@
+package com.bosonshiggs.calculatecanvasarea.benchmarks;
+
+import com.bosonshiggs.calculatecanvasarea.geometry.OrderedView;
+import com.bosonshiggs.calculatecanvasarea.geometry.PointBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Building the Sorted and ConvexHull views of OrderedView. The source is
+ * touched before each call so the cached view is rebuilt every time.
+ * atan2Sort is the baseline they replace: the old in-place
+ * Collections.sort of double[] points by two Math.atan2 calls per comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderingBenchmark {
+    @Param({"100", "1000", "10000", "100000", "1000000"})
+    public int vertices;
+
+    private PointBuffer points;
+    private final OrderedView view = new OrderedView();
+    private final List<double[]> list = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        points = Shapes.buffer(Shapes.star(vertices, 5));
+    }
+
+    @Benchmark
+    public List<double[]> atan2Sort() {
+        // Recria a lista na ordem do traçado, como a cada CalculateArea antigo
+        list.clear();
+        for (int i = 0; i < points.size(); i++) list.add(new double[]{points.getX(i), points.getY(i)});
+
+        double[] lowestPoint = list.get(0);
+        for (double[] point : list) {
+            if (point[1] < lowestPoint[1] || (point[1] == lowestPoint[1] && point[0] < lowestPoint[0])) {
+                lowestPoint = point;
+            }
+        }
+        final double[] finalLowestPoint = lowestPoint;
+        Collections.sort(list, new Comparator<double[]>() {
+            @Override
+            public int compare(double[] p1, double[] p2) {
+                double angle1 = Math.atan2(p1[1] - finalLowestPoint[1], p1[0] - finalLowestPoint[0]);
+                double angle2 = Math.atan2(p2[1] - finalLowestPoint[1], p2[0] - finalLowestPoint[0]);
+                return Double.compare(angle1, angle2);
+            }
+        });
+        return list;
+    }
+
+    @Benchmark
+    public PointBuffer sorted() {
+        touch();
+        return view.of(points, OrderedView.SORTED);
+    }
+
+    @Benchmark
+    public PointBuffer convexHull() {
+        touch();
+        return view.of(points, OrderedView.CONVEX_HULL);
+    }
+
+    // Mesmo valor, mas muda o modCount e invalida a visão em cache
+    private void touch() {
+        points.set(0, points.getX(0), points.getY(0));
+    }
+}
@@ -0,0 +1,135 @@
+package com.bosonshiggs.calculatecanvasarea.benchmarks;
+
+import com.bosonshiggs.calculatecanvasarea.geometry.RasterMask;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Raster area measurement on canvases from 1080p to 8K, with the drawing
+ * modelled as one int[] and 256-pixel tiles read in 32-row bands, as
+ * RasterScan reads getPixels. naivePerPixel is the plain per-pixel count in
+ * column-major order; scanRows builds the bit mask on one thread;
+ * parallelScan splits tile rows across a fork-join pool; floodFill is the
+ * scanline fill of the green region over an already built mask.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class RasterBenchmark {
+    private static final int TILE = 256, BAND_ROWS = 32;
+    private static final int GREEN = 0xFF00C000, TOLERANCE = 16;
+
+    @Param({"1920x1080", "3840x2160", "7680x4320"})
+    public String canvas;
+
+    private int width, height;
+    private int[] drawing;
+    private RasterMask mask;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        String[] size = canvas.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+        // Uma elipse verde preenchida à mão (bordas com ruído) sobre fundo transparente
+        drawing = new int[width * height];
+        double cx = width / 2.0, cy = height / 2.0, rx = width * 0.4, ry = height * 0.4;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double dx = (x - cx) / rx, dy = (y - cy) / ry;
+                double edge = 1 + 0.02 * Math.sin(x * 0.05) * Math.cos(y * 0.07);
+                if (dx * dx + dy * dy < edge) drawing[y * width + x] = GREEN + ((x ^ y) & 7);
+            }
+        }
+        mask = new RasterMask(width, height);
+        pool = new ForkJoinPool();
+        scanTileRows(0, (height + TILE - 1) / TILE, new int[TILE * BAND_ROWS]);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public long naivePerPixel() {
+        long count = 0;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                if (RasterMask.matches(drawing[y * width + x], GREEN, TOLERANCE)) count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long scanRows() {
+        return scanTileRows(0, (height + TILE - 1) / TILE, new int[TILE * BAND_ROWS]);
+    }
+
+    @Benchmark
+    public long parallelScan() {
+        return pool.invoke(new BandTask(0, (height + TILE - 1) / TILE));
+    }
+
+    @Benchmark
+    public long floodFill() {
+        return mask.floodFill(width / 2, height / 2);
+    }
+
+    // Linhas de tiles [top, bottom): cada tile em faixas de BAND_ROWS linhas, como getPixels
+    private long scanTileRows(int top, int bottom, int[] pixels) {
+        long count = 0;
+        for (int ty = top; ty < bottom; ty++) {
+            for (int x0 = 0; x0 < width; x0 += TILE) {
+                int w = Math.min(TILE, width - x0);
+                for (int y0 = ty * TILE, yEnd = Math.min(y0 + TILE, height); y0 < yEnd; y0 += BAND_ROWS) {
+                    int rows = Math.min(BAND_ROWS, yEnd - y0);
+                    for (int r = 0; r < rows; r++) System.arraycopy(drawing, (y0 + r) * width + x0, pixels, r * w, w);
+                    for (int r = 0; r < rows; r++) count += mask.scanRow(pixels, r * w, x0, y0 + r, w, GREEN, TOLERANCE);
+                }
+            }
+        }
+        return count;
+    }
+
+    private final class BandTask extends RecursiveTask<Long> {
+        private final int top, bottom;
+
+        BandTask(int top, int bottom) {
+            this.top = top;
+            this.bottom = bottom;
+        }
+
+        @Override
+        protected Long compute() {
+            if (bottom - top > 1) {
+                int middle = (top + bottom) >>> 1;
+                BandTask upper = new BandTask(top, middle);
+                upper.fork();
+                long lower = new BandTask(middle, bottom).compute();
+                return upper.join() + lower;
+            }
+            return scanTileRows(top, bottom, new int[TILE * BAND_ROWS]);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.bosonshiggs.calculatecanvasarea.benchmarks;
+
+import com.bosonshiggs.calculatecanvasarea.geometry.PointBuffer;
+
+import java.util.Random;
+
+/*
+ * Synthetic inputs shared by the benchmarks. The outlines are star-shaped
+ * (every vertex visible from the centre) with a random radius per vertex, so
+ * they are simple but strongly concave, like a hand-traced field boundary.
+ */
+final class Shapes {
+    static final double CENTER = 2000.0;
+    static final double RADIUS = 1500.0;
+
+    private Shapes() {
+    }
+
+    // Packed [x0, y0, x1, y1, ...] outline of 'n' vertices in trace order.
+    static double[] star(int n, long seed) {
+        Random random = new Random(seed);
+        double[] xy = new double[n * 2];
+        for (int i = 0; i < n; i++) {
+            double angle = 2 * Math.PI * i / n;
+            double radius = RADIUS * (0.6 + 0.4 * random.nextDouble());
+            xy[i * 2] = CENTER + radius * Math.cos(angle);
+            xy[i * 2 + 1] = CENTER + radius * Math.sin(angle);
+        }
+        return xy;
+    }
+
+    static PointBuffer buffer(double[] xy) {
+        PointBuffer points = new PointBuffer(xy.length / 2);
+        points.addAll(xy, xy.length / 2);
+        return points;
+    }
+
+    // A slow hand trace sampled at 120 Hz: one lap every 40 s around a wavy
+    // loop, with sub-pixel jitter, as packed [x0, y0, x1, y1, ...].
+    static double[] trace(int samples, long seed) {
+        Random random = new Random(seed);
+        double[] xy = new double[samples * 2];
+        for (int i = 0; i < samples; i++) {
+            double angle = 2 * Math.PI * (i / 120.0) / 40.0;
+            double radius = RADIUS * (0.8 + 0.1 * Math.sin(7 * angle));
+            xy[i * 2] = CENTER + radius * Math.cos(angle) + 0.3 * random.nextGaussian();
+            xy[i * 2 + 1] = CENTER + radius * Math.sin(angle) + 0.3 * random.nextGaussian();
+        }
+        return xy;
+    }
+
+    // Query points spread over the outline's bounding box.
+    static double[] queries(int count, long seed) {
+        Random random = new Random(seed);
+        double[] xy = new double[count * 2];
+        for (int i = 0; i < xy.length; i++) {
+            xy[i] = CENTER + (random.nextDouble() * 2 - 1) * RADIUS;
+        }
+        return xy;
+    }
+}
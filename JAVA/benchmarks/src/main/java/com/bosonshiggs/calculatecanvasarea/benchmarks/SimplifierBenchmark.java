@@ -0,0 +1,108 @@
+package com.bosonshiggs.calculatecanvasarea.benchmarks;
+
+import com.bosonshiggs.calculatecanvasarea.geometry.AreaCalculator;
+import com.bosonshiggs.calculatecanvasarea.geometry.PointBuffer;
+import com.bosonshiggs.calculatecanvasarea.geometry.PolygonIndex;
+import com.bosonshiggs.calculatecanvasarea.geometry.StreamSimplifier;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * StreamSimplifier on slow 120 Hz hand traces. ingest is the per-sample cost
+ * of adding the trace (tolerance 0 stores every sample, as with
+ * SimplifyTolerance off). traceAndMeasure is the end-to-end latency of one
+ * trace: ingestion, then the batch area and perimeter, 64 hit tests and the
+ * export copy that CalculateArea, GetAreaPerimeter, IsPointInPolygon and
+ * GetAreaPointsAsList pay for on the stored vertices. The vertices and
+ * samples counters give the vertex reduction (vertices / samples).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimplifierBenchmark {
+    private static final int QUERIES = 64;
+
+    @Param({"10000", "100000"})
+    public int samples;
+
+    @Param({"0", "0.5", "1.5", "4"})
+    public double tolerance;
+
+    private double[] trace;
+    private double[] queries;
+    private final PointBuffer points = new PointBuffer();
+    private final StreamSimplifier simplifier = new StreamSimplifier();
+
+    // Contadores somados por iteração: a razão dá a redução de vértices
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Reduction {
+        public long samples;
+        public long vertices;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            samples = 0;
+            vertices = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        trace = Shapes.trace(samples, 13);
+        queries = Shapes.queries(QUERIES, 14);
+        simplifier.setTolerance(tolerance);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(100_000)
+    public int ingest(Reduction reduction) {
+        // Normaliza para 100k amostras por chamada, qualquer que seja o tamanho do traço
+        int stored = 0;
+        for (int pass = 0; pass < 100_000 / samples; pass++) stored += ingestTrace(reduction);
+        return stored;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double traceAndMeasure(Reduction reduction) {
+        ingestTrace(reduction);
+        double measured = AreaCalculator.calculateArea(points) + AreaCalculator.calculatePerimeter(points);
+        for (int i = 0; i < queries.length; i += 2) {
+            if (PolygonIndex.containsLinear(points, queries[i], queries[i + 1])) measured++;
+        }
+        return measured + points.toArray().length;
+    }
+
+    private int ingestTrace(Reduction reduction) {
+        points.clear();
+        for (int i = 0; i < trace.length; i += 2) {
+            if (tolerance > 0) {
+                simplifier.add(points, trace[i], trace[i + 1]);
+            } else {
+                points.add(trace[i], trace[i + 1]);
+            }
+        }
+        reduction.samples += samples;
+        reduction.vertices += points.size();
+        return points.size();
+    }
+}
@@ -3,17 +3,40 @@ package com.bosonshiggs.calculatecanvasarea;
 import com.google.appinventor.components.annotations.*;
 import com.google.appinventor.components.runtime.*;
 import com.google.appinventor.components.common.ComponentCategory;
+import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.runtime.util.MediaUtil;
 import com.google.appinventor.components.annotations.Asset;
 import com.google.appinventor.components.runtime.util.YailList;
+import com.google.appinventor.components.runtime.util.YailDictionary;
+
+import com.bosonshiggs.calculatecanvasarea.geometry.AreaCalculator;
+import com.bosonshiggs.calculatecanvasarea.geometry.Calibration;
+import com.bosonshiggs.calculatecanvasarea.geometry.ContourTracer;
+import com.bosonshiggs.calculatecanvasarea.geometry.DirtyRegion;
+import com.bosonshiggs.calculatecanvasarea.geometry.Grayscale;
+import com.bosonshiggs.calculatecanvasarea.geometry.LatencyHistogram;
+import com.bosonshiggs.calculatecanvasarea.geometry.OrderedView;
+import com.bosonshiggs.calculatecanvasarea.geometry.PointBuffer;
+import com.bosonshiggs.calculatecanvasarea.geometry.PointSnapshot;
+import com.bosonshiggs.calculatecanvasarea.geometry.PolygonIndex;
+import com.bosonshiggs.calculatecanvasarea.geometry.RasterMask;
+import com.bosonshiggs.calculatecanvasarea.geometry.RingCollection;
+import com.bosonshiggs.calculatecanvasarea.geometry.StreamSimplifier;
 
 import android.content.Context;
 import android.view.View;
 import android.view.ViewTreeObserver;
 import android.graphics.Bitmap;
 import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.Path;
+import android.graphics.ColorFilter;
 
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
 
 import android.graphics.PorterDuff;
 import android.graphics.Bitmap;
@@ -21,10 +44,24 @@ import android.graphics.Color;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.RectF;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
 import java.util.ArrayDeque;
 import java.util.Deque;
@@ -32,8 +69,22 @@ import java.util.Deque;
 import java.util.ArrayList;
 import java.util.List;
 
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import android.util.Log;
 
@@ -44,7 +95,9 @@ import android.util.Log;
     iconName = "aiwebres/icon.png")
 @SimpleObject(external = true)
 public class CalculateCanvasArea extends AndroidNonvisibleComponent {
-	private ArrayList<double[]> areaPoints = new ArrayList<>();
+	// Anéis (polígonos e buracos); areaPoints é sempre o anel selecionado
+	private final RingCollection rings = new RingCollection();
+	private PointBuffer areaPoints = rings.selectedPoints();
     
 	private double[] startRedLine = new double[2], endRedLine = new double[2];
     private double[] startBlueLine = new double[2], endBlueLine = new double[2];    
@@ -54,6 +107,9 @@ public class CalculateCanvasArea extends AndroidNonvisibleComponent {
     private double lengthRedLineInMeters;
     private double lengthBlueLineInMeters;
 
+    // Transformação pixel -> metro, recalculada só quando as linhas de referência mudam
+    private final Calibration calibration = new Calibration();
+
     private ComponentContainer container;
     private double startXBlue, startXRed;
     private double currentXBlue, currentXRed;
@@ -61,7 +117,39 @@ public class CalculateCanvasArea extends AndroidNonvisibleComponent {
     private double startYBlue, startYRed;
     private double currentYBlue, currentYRed;
     
-    private Bitmap drawingBitmap;
+    // Camada de desenho em tiles alocados sob demanda
+    private TiledSurface surface;
+    private int maxResidentTiles = TiledSurface.DEFAULT_MAX_RESIDENT_TILES;
+
+    // Buffers de exibição reutilizados: compõe no back, exibe o front e troca
+    private Bitmap frontBuffer, backBuffer;
+    private final android.graphics.Canvas composeCanvas = new android.graphics.Canvas();
+    private final FrontBufferDrawable displayDrawable = new FrontBufferDrawable();
+    private boolean displayAttached = false;
+    private boolean redrawPending = false;
+
+    // Regiões sujas em pixels do canvas: a do quadro atual e a do anterior (o back está um quadro atrasado)
+    private final DirtyRegion dirty = new DirtyRegion();
+    private final Rect composeRect = new Rect();
+    private final Rect displayRect = new Rect();
+    private int pixelsTouchedLastFrame = 0;
+    private int rasterPixelCount = 0;
+
+    // Os buffers de exibição não passam do tamanho da View, que estica o fundo de qualquer forma
+    private float displayScaleX = 1f, displayScaleY = 1f;
+    private final Paint tilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private final Paint linePaint = new Paint();
+    private final Paint strokePaint = new Paint();
+    private final Path strokePath = new Path();
+    private final RectF strokeBounds = new RectF();
+
+    private SampledImageLoader imageLoader;
+
+    // Só a imagem de fundo, sem os traços por cima; decodificada sob demanda para o AutoTraceRegion
+    private TiledSurface backgroundLayer;
+    private String backgroundLayerPath;
+    private boolean autoTraceGrayscale = false;
     
     private Canvas canvasComponent;
     
@@ -78,12 +166,74 @@ public class CalculateCanvasArea extends AndroidNonvisibleComponent {
     private String LOG_NAME = "CalculateCanvasArea";
     private boolean flagLog = false;
 
+    private static final long FRAME_INTERVAL_MS = 16;
+
+    private boolean liveMeasurement = false;
+
+    // Ordem usada pelo CalculateArea; areaPoints nunca é reordenado
+    private String polygonOrdering = OrderedView.SORTED;
+    private final OrderedView orderedView = new OrderedView();
+
+    // Simplificação na entrada (0 = desligada)
+    private float simplifyTolerance = 0f;
+    private final StreamSimplifier simplifier = new StreamSimplifier();
+
+    private boolean sessionIncludesDrawing = false;
+
+    private boolean preparedPolygon = false;
+    private final PolygonIndex polygonIndex = new PolygonIndex();
+
+    private String grayscaleMode = GrayscaleTask.MODE_AVERAGE;
+    private static boolean staleGrayscaleFilesCleared = false;
+
+    // Pools compartilhados: bandas de pixels em paralelo e tarefas assíncronas em segundo plano.
+    // backgroundExecutor precisa ter uma única thread: o asyncIndex de cada componente e o PointBuffer de
+    // PointSnapshot.asBuffer() (cujas somas métricas são preenchidas ao medir) não são sincronizados e só
+    // são seguros porque duas tarefas nunca rodam ao mesmo tempo.
+    private static ForkJoinPool bandPool;
+    private static ExecutorService backgroundExecutor;
+
+    // Trabalho adiado para o próximo quadro (no máximo uma execução por vsync)
+    private final Handler uiHandler = new Handler(Looper.getMainLooper());
+    private boolean frameScheduled = false;
+    private boolean areaUpdatePending = false;
+
+    // Versão dos pontos (incrementada a cada alteração) e o último snapshot imutável publicado
+    private int pointsVersion = 0;
+    private volatile PointSnapshot pointsSnapshot;
+
+    // Pedidos assíncronos: só o mais recente de cada tipo entrega resultado
+    private final AtomicInteger areaRequest = new AtomicInteger();
+    private final AtomicInteger hitTestRequest = new AtomicInteger();
+    private Future<?> pendingArea, pendingHitTest;
+    private final PolygonIndex asyncIndex = new PolygonIndex(); // só na thread do backgroundExecutor
+
+    // Histórico de traços para Undo/Redo
+    private final StrokeHistory history = new StrokeHistory();
+
+    // Os traços do histórico, em forma vetorial, para redesenhar nítido ao redimensionar
+    private final DisplayList displayList = new DisplayList();
+
+    // Os traços guardam coordenadas no tamanho do canvas em que o histórico começou; drawOp aplica a escala do alvo
+    private int strokeSpaceWidth = 800, strokeSpaceHeight = 600;
+
+    // Instrumentação (desligada por padrão) e relatório periódico
+    private final Metrics metrics = new Metrics();
+    private int metricsReportInterval = 0;
+
     public CalculateCanvasArea(ComponentContainer container) {
         super(container.$form());
         this.container = container;
         this.context = container.$context();
         
-        drawingBitmap = Bitmap.createBitmap(canvasWidth, canvasHeight, Bitmap.Config.ARGB_8888);
+        surface = new TiledSurface(canvasWidth, canvasHeight, maxResidentTiles, context.getCacheDir(), metrics);
+
+        linePaint.setStrokeWidth(5);
+
+        strokePaint.setStyle(Paint.Style.STROKE);
+        strokePaint.setStrokeCap(Paint.Cap.ROUND);
+        strokePaint.setStrokeJoin(Paint.Join.ROUND);
+        strokePaint.setAntiAlias(true);
     }
     
     @SimpleFunction(description = "Sets the red reference line as the horizontal reference.")
@@ -110,6 +260,7 @@ public class CalculateCanvasArea extends AndroidNonvisibleComponent {
         startRedLine[1] = startYRed;
         endRedLine[0] = currentXRed;
         endRedLine[1] = currentYRed;
+        updateCalibration();
         DrawLine(lineColor);
     }
 
@@ -137,21 +288,18 @@ public class CalculateCanvasArea extends AndroidNonvisibleComponent {
         startBlueLine[1] = startYBlue;
         endBlueLine[0] = currentXBlue;
         endBlueLine[1] = currentYBlue;
+        updateCalibration();
         DrawLine(lineColor);
     }
     
     private void DrawLine(int color) {
         if (lineStartPoint != null && lineEndPoint != null) {
             try {
-                android.graphics.Canvas canvas = new android.graphics.Canvas(drawingBitmap);
-                Paint paint = new Paint();
-                paint.setColor(color);
-                paint.setStrokeWidth(5);
-
-                canvas.drawLine((float) lineStartPoint.getX(), (float) lineStartPoint.getY(), 
-                                (float) lineEndPoint.getX(), (float) lineEndPoint.getY(), paint);
-
-                // Resto do método...
+                Stroke stroke = beginStroke(new Stroke(Stroke.REFERENCE, toStrokeSpace(new float[]{
+                        (float) lineStartPoint.getX(), (float) lineStartPoint.getY(),
+                        (float) lineEndPoint.getX(), (float) lineEndPoint.getY()}), color, linePaint.getStrokeWidth(), null), false);
+                drawStroke(stroke);
+                endStroke(stroke, false);
             } catch (IllegalArgumentException e) {
             	if (flagLog) Log.e("CalculateCanvasArea", "Erro ao desenhar linha: " + e.getMessage());
                 ReportError("Erro ao desenhar linha: " + e.getMessage());
@@ -165,82 +313,342 @@ public class CalculateCanvasArea extends AndroidNonvisibleComponent {
         this.actualLengthBlue = lengthBlue;
     }
 
+    @SimpleFunction(description = "Saves all rings, the red/blue and perspective calibration and optionally "
+            + "the drawing (see SessionIncludesDrawing) to a binary session file.")
+    public void SaveSession(String path) {
+        try {
+            // Um PNG por tile, comprimido um de cada vez; nunca um bitmap do canvas inteiro
+            Map<Long, byte[]> tiles = null;
+            if (sessionIncludesDrawing && surface != null) tiles = surface.encodeTiles(null);
+            writeSession(resolvePath(path), tiles);
+        } catch (IOException e) {
+        	if (flagLog) Log.e(LOG_NAME, "Error saving session: " + e.getMessage(), e);
+            ReportError("Error saving session: " + e.getMessage());
+        }
+    }
+
+    @SimpleFunction(description = "Loads a session saved with SaveSession, replacing all rings and the calibration. "
+            + "If the file contains a drawing, it replaces the canvas contents.")
+    public void LoadSession(String path) {
+        try {
+            readSession(resolvePath(path));
+        } catch (IOException e) {
+        	if (flagLog) Log.e(LOG_NAME, "Error loading session: " + e.getMessage(), e);
+            ReportError("Error loading session: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // Arquivo corrompido de um jeito que escapou da validação: relata em vez de derrubar o app
+        	if (flagLog) Log.e(LOG_NAME, "Error loading session: " + e, e);
+            ReportError("Error loading session: corrupt file (" + e + ")");
+        }
+    }
+
+    @SimpleFunction(description = "Returns a dictionary with latency statistics (count, meanMs, p50Ms, p95Ms, p99Ms, maxMs) "
+            + "per instrumented block, bitmap allocations and redraws per second since the previous report. "
+            + "Only collected while MetricsEnabled is on.")
+    public YailDictionary GetMetrics() {
+        YailDictionary report = metrics.report();
+        report.put("residentTiles", surface.residentTileCount());
+        report.put("spilledTiles", surface.spilledTileCount());
+        return report;
+    }
+
+    @SimpleFunction(description = "Clears all collected metrics.")
+    public void ResetMetrics() {
+        metrics.reset();
+    }
+
     @SimpleFunction(description = "Calculates the area of the green region")
     public double CalculateArea() {
         // Verifica se existem pontos suficientes para formar uma área
         if (areaPoints.size() < 3) return 0.0;
-        
-        sortPointsForAreaCalculation(); // Ordena os pontos antes de calcular a área
 
-        double areaInDegrees;
+        long started = metrics.start();
         try {
-            areaInDegrees = AreaCalculator.calculateArea(areaPoints);
+            return metricArea();
         } catch (Exception e) {
         	if (flagLog) Log.e(LOG_NAME, "Error: " + e.getMessage(), e);
         	ReportError("Erro ao calcular a área");
             return 0.0;
+        } finally {
+            // Chamadas que falham também entram nos tempos
+            metrics.record(Metrics.OP_CALCULATE_AREA, started);
+        }
+    }
+
+    // Área em metros quadrados segundo PolygonOrdering
+    private double metricArea() {
+        // AsDrawn usa a soma acumulada; as outras ordens, a visão em cache até os pontos mudarem
+        return calibration.area(orderedView.of(areaPoints, polygonOrdering));
+    }
+
+    private double metricPerimeter(PointBuffer points) {
+        // Sem calibração, continua em pixels
+        return calibration.isCalibrated() ? calibration.perimeter(points) : points.closedPerimeter();
+    }
+
+    // Área de uma contagem de pixels (medição raster)
+    private double scaleArea(double pixelArea) {
+        return pixelArea * calibration.areaScale();
+    }
+
+    // Camada com a última imagem de fundo visível no tamanho do canvas; refeita quando a imagem ou o tamanho mudam
+    private TiledSurface backgroundLayer() throws IOException {
+        String path = displayList.lastImagePath();
+        if (path == null) return null;
+        if (backgroundLayer != null && path.equals(backgroundLayerPath)
+                && backgroundLayer.getWidth() == canvasWidth && backgroundLayer.getHeight() == canvasHeight) {
+            return backgroundLayer;
         }
+        releaseBackgroundLayer();
+        if (imageLoader == null) imageLoader = new SampledImageLoader(container.$form(), metrics);
+        TiledSurface layer = new TiledSurface(canvasWidth, canvasHeight, maxResidentTiles, context.getCacheDir(), metrics);
+        try {
+            imageLoader.drawInto(layer, path, canvasWidth, canvasHeight);
+        } catch (IOException e) {
+            layer.release();
+            throw e;
+        }
+        backgroundLayer = layer;
+        backgroundLayerPath = path;
+        return layer;
+    }
+
+    private void releaseBackgroundLayer() {
+        if (backgroundLayer == null) return;
+        backgroundLayer.release();
+        backgroundLayer = null;
+        backgroundLayerPath = null;
+    }
+
+    private void updateCalibration() {
+        calibration.setReferenceLines(startRedLine, endRedLine, lengthRedLineInMeters,
+                                      startBlueLine, endBlueLine, lengthBlueLineInMeters);
+    }
 
-        if (startRedLine == null || endRedLine == null || startBlueLine == null || endBlueLine == null) {
-            // Se as linhas de referência não estiverem definidas, retorna 0 ou lida com o erro conforme necessário
+    @SimpleFunction(description = "Outlines the region of the background image (the last AddBackgroundImage, without "
+            + "the strokes drawn over it) around the seed point: pixels within 'tolerance' (0-255 per channel, or of "
+            + "gray level with AutoTraceGrayscale) of the seed color are flood-filled and the outer contour replaces the "
+            + "points of the selected ring, simplified with SimplifyTolerance (at least 1 pixel). Can be undone with "
+            + "Undo. Returns the number of points.")
+    public int AutoTraceRegion(double seedX, double seedY, int tolerance) {
+        int x = (int) Math.floor(seedX), y = (int) Math.floor(seedY);
+        if (x < 0 || y < 0 || x >= canvasWidth || y >= canvasHeight) {
+        	if (flagLog) Log.e(LOG_NAME, "Seed point outside the canvas: " + seedX + ", " + seedY);
+            ReportError("Seed point outside the canvas.");
             return 0;
         }
 
-        double horizontalScale = calculateScale(startRedLine, endRedLine, lengthRedLineInMeters);
-        double verticalScale = calculateScale(startBlueLine, endBlueLine, lengthBlueLineInMeters);
+        double[] contour;
+        try {
+            TiledSurface layer = backgroundLayer();
+            if (layer == null) {
+            	if (flagLog) Log.e(LOG_NAME, "AutoTraceRegion needs a background image.");
+                ReportError("AutoTraceRegion needs a background image (AddBackgroundImage).");
+                return 0;
+            }
+            // Máscara em paralelo por faixas de linhas, preenchimento e contorno sobre bits
+            RasterScan scan = new RasterScan(layer, layer.getPixel(x, y), tolerance, true,
+                                             autoTraceGrayscale ? grayscaleMode : null);
+            scan.count(bandPool());
+            rasterPixelCount = (int) scan.floodFill(x, y);
+            contour = ContourTracer.trace(scan.mask.filled(), scan.width, scan.height, scan.mask.wordsPerRow);
+        } catch (Exception e) {
+        	if (flagLog) Log.e(LOG_NAME, "Error: " + e.getMessage(), e);
+        	ReportError("Erro ao contornar a região");
+            return 0;
+        }
+
+        // O contorno segue as bordas dos pixels; degraus de 1 px somem com a simplificação
+        StreamSimplifier outline = new StreamSimplifier();
+        outline.setTolerance(Math.max(1f, simplifyTolerance));
+        Stroke edit = beginPointsEdit(0);
+        areaPoints.clear();
+        for (int i = 0; i < contour.length; i += 2) outline.add(areaPoints, contour[i], contour[i + 1]);
+        simplifier.reset();
+        onAreaPointsChanged();
+        endStroke(edit, false);
+        return areaPoints.size();
+    }
+
+    @SimpleFunction(description = "Calibrates with four points of the image and their real positions in meters, "
+            + "for photographed plans. Both lists hold four [x, y] pairs. Replaces the red/blue line "
+            + "calibration until ClearPerspectiveCalibration is called.")
+    public void SetPerspectiveCalibration(YailList imagePoints, YailList worldPoints) {
+        double[] image = toPackedPoints(imagePoints);
+        double[] world = toPackedPoints(worldPoints);
+        if (image.length != 8 || world.length != 8) {
+        	if (flagLog) Log.e(LOG_NAME, "Perspective calibration needs exactly four points in each list.");
+            ReportError("Perspective calibration needs exactly four points in each list.");
+            return;
+        }
+        if (!calibration.setPerspective(image, world)) {
+        	if (flagLog) Log.e(LOG_NAME, "Perspective calibration points are degenerate.");
+            ReportError("Perspective calibration points are degenerate (three of them are collinear).");
+        }
+    }
+
+    @SimpleFunction(description = "Removes the perspective calibration and goes back to the red/blue lines.")
+    public void ClearPerspectiveCalibration() {
+        calibration.clearPerspective();
+    }
+
+    @SimpleFunction(description = "Returns the distance in meters between two canvas points, using the calibration.")
+    public double CalculateMetricDistance(double x1, double y1, double x2, double y2) {
+        return calibration.distance(x1, y1, x2, y2);
+    }
+
+    @SimpleFunction(description = "Converts a canvas point to meters using the calibration. Returns [x, y], "
+            + "or an empty list while uncalibrated.")
+    public YailList PixelToMetric(double x, double y) {
+        if (!calibration.isCalibrated()) return YailList.makeEmptyList();
+        double[] point = {x, y};
+        calibration.transform(point, 1);
+        return YailList.makeList(new Object[]{point[0], point[1]});
+    }
 
-        // Retorna a área calculada ajustada pelas escalas
-        return areaInDegrees * horizontalScale * verticalScale;
+    @SimpleFunction(description = "Counts the drawing pixels whose color is within 'tolerance' (0-255 per channel) "
+            + "of 'color' and returns their area using the red/blue calibration.")
+    public double CalculateColorArea(int color, int tolerance) {
+        try {
+            RasterScan scan = new RasterScan(surface, color, tolerance, false);
+            rasterPixelCount = (int) scan.count(bandPool());
+        } catch (Exception e) {
+        	if (flagLog) Log.e(LOG_NAME, "Error: " + e.getMessage(), e);
+        	ReportError("Erro ao calcular a área por cor");
+            return 0.0;
+        }
+        return scaleArea(rasterPixelCount);
     }
 
-    private double calculateScale(double[] start, double[] end, double lengthMeters) {
-        if (start == null || end == null) {
-            // Handle the error or return a default value
-            return 0; // Or throw an exception, based on how you want to handle this scenario
+    @SimpleFunction(description = "Flood-fills from the seed point over pixels within 'tolerance' (0-255 per channel) "
+            + "of the seed color and returns the filled area using the red/blue calibration. "
+            + "Works for free-hand fills and self-intersecting outlines.")
+    public double CalculateFilledArea(double seedX, double seedY, int tolerance) {
+        int x = (int) Math.floor(seedX), y = (int) Math.floor(seedY);
+        if (x < 0 || y < 0 || x >= canvasWidth || y >= canvasHeight) {
+        	if (flagLog) Log.e(LOG_NAME, "Seed point outside the canvas: " + seedX + ", " + seedY);
+            ReportError("Seed point outside the canvas.");
+            return 0.0;
+        }
+        try {
+            RasterScan scan = new RasterScan(surface, surface.getPixel(x, y), tolerance, true);
+            scan.count(bandPool());
+            rasterPixelCount = (int) scan.floodFill(x, y);
+        } catch (Exception e) {
+        	if (flagLog) Log.e(LOG_NAME, "Error: " + e.getMessage(), e);
+        	ReportError("Erro ao calcular a área preenchida");
+            return 0.0;
         }
-        double distanceInDegrees = Math.sqrt(Math.pow(end[0] - start[0], 2) + Math.pow(end[1] - start[1], 2));
-        return distanceInDegrees == 0 ? 0 : lengthMeters / distanceInDegrees;
+        return scaleArea(rasterPixelCount);
     }
 
-    @SimpleFunction(description = "Loads an image from a path and converts it to grayscale")
+    @SimpleFunction(description = "Loads an image from a path and converts it to grayscale. "
+            + "Returns the path of a new PNG file in the app cache; every conversion writes its own file, "
+            + "and files left by earlier runs of the app are deleted.")
     public String ConvertToGrayscale(@Asset String imagePath) {
-        final String tempPath = imagePath == null ? "" : imagePath;
         try {
-            Drawable drawable = MediaUtil.getBitmapDrawable(container.$form(), imagePath);
-            Bitmap originalBitmap = ((BitmapDrawable) drawable).getBitmap();
+            return convertToGrayscale(imagePath, grayscaleMode); // Returns the path of the converted image
+        } catch (IOException e) {
+            e.printStackTrace();
+            return ""; // Returns an empty string in case of error
+        }
+    }
 
-            Bitmap grayscaleBitmap = Bitmap.createBitmap(originalBitmap.getWidth(), originalBitmap.getHeight(), Bitmap.Config.ARGB_8888);
+    @SimpleFunction(description = "Converts an image to grayscale in the background. "
+            + "GrayscaleConverted fires with the output path when done.")
+    public void ConvertToGrayscaleAsync(@Asset final String imagePath) {
+        // O modo é lido aqui, na thread de UI; a tarefa usa só a cópia
+        final String mode = grayscaleMode;
+        backgroundExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final String path = convertToGrayscale(imagePath, mode);
+                    container.$form().runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            GrayscaleConverted(path);
+                        }
+                    });
+                } catch (final Exception e) {
+                	if (flagLog) Log.e(LOG_NAME, "Error converting to grayscale: " + e.getMessage(), e);
+                    container.$form().runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            ReportError("Error converting to grayscale: " + e.getMessage());
+                        }
+                    });
+                }
+            }
+        });
+    }
 
-            for (int i = 0; i < originalBitmap.getWidth(); i++) {
-                for (int j = 0; j < originalBitmap.getHeight(); j++) {
-                    int pixel = originalBitmap.getPixel(i, j);
-                    int average = (Color.red(pixel) + Color.green(pixel) + Color.blue(pixel)) / 3;
-                    grayscaleBitmap.setPixel(i, j, Color.rgb(average, average, average));
+    // Uma vez por processo: apaga em segundo plano as conversões de processos anteriores. As deste
+    // processo ficam, pois podem estar em uso como imagem de fundo (Undo e SetCanvasSize a redesenham)
+    private static synchronized void clearStaleGrayscaleFiles(File dir, final String currentPrefix) {
+        if (staleGrayscaleFilesCleared) return;
+        staleGrayscaleFilesCleared = true;
+        final File[] files = dir.listFiles();
+        if (files == null) return;
+        backgroundExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                for (File file : files) {
+                    if (!file.getName().startsWith(currentPrefix)) file.delete();
                 }
             }
+        });
+    }
 
-            // Saves the bitmap to a temporary file
-            String path = container.$form().getExternalFilesDir(null).getAbsolutePath() + "/grayscale_image.png";
-            OutputStream outputStream = new FileOutputStream(path);
+    private String convertToGrayscale(String imagePath, String mode) throws IOException {
+        long started = metrics.start();
+        try {
+            return writeGrayscale(imagePath, mode);
+        } finally {
+            metrics.record(Metrics.OP_GRAYSCALE, started);
+        }
+    }
+
+    private String writeGrayscale(String imagePath, String mode) throws IOException {
+        Drawable drawable = MediaUtil.getBitmapDrawable(container.$form(), imagePath);
+        Bitmap originalBitmap = ((BitmapDrawable) drawable).getBitmap();
+
+        Bitmap grayscaleBitmap = Bitmap.createBitmap(originalBitmap.getWidth(), originalBitmap.getHeight(), Bitmap.Config.ARGB_8888);
+        metrics.bitmapAllocated(grayscaleBitmap);
+
+        // Converte em faixas de linhas com getPixels/setPixels, distribuídas entre os núcleos
+        bandPool().invoke(new GrayscaleTask(originalBitmap, grayscaleBitmap, mode, 0, originalBitmap.getHeight()));
+
+        // Arquivo novo no cache (conversões simultâneas nunca dividem a saída); os de execuções anteriores são apagados
+        File dir = new File(context.getCacheDir(), "grayscale");
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        String prefix = android.os.Process.myPid() + "-";
+        clearStaleGrayscaleFiles(dir, prefix);
+        File output = File.createTempFile(prefix + "grayscale_", ".png", dir);
+        String path = output.getAbsolutePath();
+        OutputStream outputStream = new FileOutputStream(output);
+        try {
             grayscaleBitmap.compress(Bitmap.CompressFormat.PNG, 100, outputStream);
+        } finally {
             outputStream.close();
-
-            return path; // Returns the path of the converted image
-        } catch (IOException e) {
-            e.printStackTrace();
-            return ""; // Returns an empty string in case of error
+            grayscaleBitmap.recycle();
         }
+        return path;
     }
 
     @SimpleFunction(description = "Resets the points in the green area.")
     public void ResetAreaPoints() {
+    	if (areaPoints.isEmpty()) return;
+    	Stroke edit = beginPointsEdit(0);
     	areaPoints.clear();
+    	onAreaPointsChanged();
+    	endStroke(edit, false);
     }
 
     @SimpleFunction(description = "Calculates the distance between two points.")
     public double CalculateDistanceBetweenPoints(double x1, double y1, double x2, double y2) {
         // Calcula a distância euclidiana entre os dois pontos
-        return Math.sqrt(Math.pow(x2 - x1, 2) + Math.pow(y2 - y1, 2));
+        return AreaCalculator.distance(x1, y1, x2, y2);
     }
 
 
@@ -249,95 +657,383 @@ public class CalculateCanvasArea extends AndroidNonvisibleComponent {
     	return areaPoints.size(); // Corrigido para 'areaPoints'
     }
 
-    @SimpleFunction(description = "Calculates the perimeter of the green area.")
+    @SimpleFunction(description = "Calculates the perimeter of the green area, in meters when calibrated, otherwise in pixels.")
     public double GetAreaPerimeter() {
-        double perimeter = 0.0;
-        for (int i = 0; i < areaPoints.size(); i++) { // Corrigido para 'areaPoints'
-            double[] current = areaPoints.get(i);
-            double[] next = areaPoints.get((i + 1) % areaPoints.size()); // Corrigido para 'areaPoints'
-            perimeter += CalculateDistanceBetweenPoints(current[0], current[1], next[0], next[1]);
-        }
-        return perimeter;
+        return metricPerimeter(areaPoints);
     }
     
     // Exemplo de método de desenho (precisa ser expandido)
     @SimpleFunction(description = "Draw a line on the active layer.")
     public void DrawLine(double prevX, double prevY, double currentX, double currentY, int color, float strokeWidth) {
-        if (drawingBitmap == null) {
+        if (surface == null) {
         	if (flagLog) Log.e(LOG_NAME, "Bitmap for active layer is null.");
             ReportError("Bitmap for active layer is null.");
             return;
         }
         
-        AddAreaPoint(currentX, currentY);
-        
-        android.graphics.Canvas canvas = new android.graphics.Canvas(drawingBitmap);
-        Paint paint = new Paint();
-        paint.setColor(color);
-        paint.setStrokeWidth(strokeWidth);
-        paint.setStyle(Paint.Style.STROKE);
-        paint.setStrokeCap(Paint.Cap.ROUND);
-        paint.setStrokeJoin(Paint.Join.ROUND);
-        paint.setAntiAlias(true);
-        
-        canvas.drawLine((float) prevX, (float) prevY, (float) currentX, (float) currentY, paint);
-        RedrawCanvas();
+        long started = metrics.start();
+        try {
+            Stroke stroke = beginStroke(new Stroke(Stroke.SEGMENT, toStrokeSpace(new float[]{
+                    (float) prevX, (float) prevY, (float) currentX, (float) currentY}), color, strokeWidth, null), true);
+            AddAreaPoint(currentX, currentY);
+
+            drawStroke(stroke);
+            endStroke(stroke, false);
+            RedrawCanvas();
+        } finally {
+            metrics.record(Metrics.OP_DRAW_LINE, started);
+        }
     }
     
+    @SimpleFunction(description = "Draws a batch of touch samples as one stroke on the active layer and adds "
+            + "them to the green area. As with prevX/prevY in DrawLine, the first sample is where the pen "
+            + "already is: the stroke starts there but only the following samples are added, so consecutive "
+            + "batches can share their end point. Items that are not a pair of numbers are ignored."
+            + "\nExample: [[x1, y1], [x2, y2], etc]")
+    public void DrawPolyline(YailList points, int color, float strokeWidth) {
+        if (surface == null) {
+        	if (flagLog) Log.e(LOG_NAME, "Bitmap for active layer is null.");
+            ReportError("Bitmap for active layer is null.");
+            return;
+        }
+
+        double[] coords = toPackedPoints(points);
+        int count = coords.length / 2;
+        if (count < 2) return;
+
+        float[] path = new float[coords.length];
+        for (int i = 0; i < coords.length; i++) path[i] = (float) coords[i];
+        Stroke stroke = beginStroke(new Stroke(Stroke.POLYLINE, toStrokeSpace(path), color, strokeWidth, null), true);
+
+        // A primeira amostra é a posição da caneta (o prevX/prevY do DrawLine); não entra na área
+        if (simplifyTolerance > 0f) {
+            for (int i = 1; i < count; i++) simplifier.add(areaPoints, coords[i * 2], coords[i * 2 + 1]);
+        } else {
+            areaPoints.addAll(DoubleBuffer.wrap(coords, 2, coords.length - 2), count - 1);
+        }
+        onAreaPointsChanged();
+
+        drawStroke(stroke);
+        endStroke(stroke, false);
+        RedrawCanvas();
+    }
+
     @SimpleFunction(description = "Clears the active layer.")
     public void ClearCanvas() {
-        if (drawingBitmap != null) {
-            // Limpar o Bitmap da camada ativa
-        	android.graphics.Canvas canvas = new android.graphics.Canvas(drawingBitmap);
-            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        if (surface != null) {
+            // Limpar a camada ativa (libera todos os tiles); pode ser desfeito com Undo
+            Stroke stroke = beginStroke(new Stroke(Stroke.CLEAR, null, 0, 0f, null), false);
+            drawStroke(stroke);
+            endStroke(stroke, false);
             RedrawCanvas();
         }
     }
     
+    @SimpleFunction(description = "Writes every ring to a file in the background as CSV, GeoJSON or WKT. "
+            + "Coordinates are in meters when the red and blue lines are calibrated, otherwise in pixels. "
+            + "In GeoJSON and WKT each hole is an interior ring of the outer ring that contains it. "
+            + "PointsExported fires when the file is complete.")
+    public void ExportPoints(final String path, String format) {
+        final int kind;
+        if ("CSV".equalsIgnoreCase(format)) {
+            kind = PointExporter.CSV;
+        } else if ("GeoJSON".equalsIgnoreCase(format)) {
+            kind = PointExporter.GEOJSON;
+        } else if ("WKT".equalsIgnoreCase(format)) {
+            kind = PointExporter.WKT;
+        } else {
+        	if (flagLog) Log.e(LOG_NAME, "Unknown export format: " + format);
+            ReportError("Unknown export format: " + format + ". Use CSV, GeoJSON or WKT.");
+            return;
+        }
+
+        // Cópia dos vértices na thread de UI; a conversão e a escrita acontecem em segundo plano
+        final PointExporter exporter = new PointExporter(kind, calibration.isCalibrated() ? calibration.copy() : null);
+        for (int id : rings.ids()) exporter.addRing(id, rings.isHole(id), rings.points(id).toArray());
+        final File file = resolvePath(path);
+
+        backgroundExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final int count = exporter.writeTo(file);
+                    container.$form().runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            PointsExported(file.getAbsolutePath(), count);
+                        }
+                    });
+                } catch (final IOException e) {
+                	if (flagLog) Log.e(LOG_NAME, "Error exporting points: " + e.getMessage(), e);
+                    container.$form().runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            ReportError("Error exporting points: " + e.getMessage());
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    @SimpleFunction(description = "Calculates the area and perimeter of the current points on a background thread. "
+            + "AreaCalculated fires with the result and the PointsVersion it was computed for; "
+            + "a newer request cancels an older one that has not finished.")
+    public void CalculateAreaAsync() {
+        final PointSnapshot snapshot = snapshot();
+        final Calibration measure = calibration.copy();
+        final String ordering = polygonOrdering;
+        final int request = areaRequest.incrementAndGet();
+        if (pendingArea != null) pendingArea.cancel(false);
+
+        pendingArea = backgroundExecutor().submit(new Runnable() {
+            @Override
+            public void run() {
+                if (areaRequest.get() != request) return;
+                PointBuffer points = snapshot.asBuffer();
+                final double area = measure.area(new OrderedView().of(points, ordering));
+                final double perimeter = measure.isCalibrated() ? measure.perimeter(points) : points.closedPerimeter();
+                if (areaRequest.get() != request) return;
+                container.$form().runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (areaRequest.get() == request) AreaCalculated(area, perimeter, snapshot.version());
+                    }
+                });
+            }
+        });
+    }
+
+    @SimpleFunction(description = "Tests whether a point is inside the current polygon on a background thread. "
+            + "PointInPolygonChecked fires with the result and the PointsVersion it was computed for; "
+            + "a newer request cancels an older one that has not finished.")
+    public void IsPointInPolygonAsync(final double x, final double y) {
+        final PointSnapshot snapshot = snapshot();
+        final int request = hitTestRequest.incrementAndGet();
+        if (pendingHitTest != null) pendingHitTest.cancel(false);
+
+        pendingHitTest = backgroundExecutor().submit(new Runnable() {
+            @Override
+            public void run() {
+                if (hitTestRequest.get() != request) return;
+                final boolean inside = asyncIndex.contains(snapshot.asBuffer(), x, y);
+                if (hitTestRequest.get() != request) return;
+                container.$form().runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (hitTestRequest.get() == request) PointInPolygonChecked(x, y, inside, snapshot.version());
+                    }
+                });
+            }
+        });
+    }
+
+    @SimpleFunction(description = "Cancels pending CalculateAreaAsync and IsPointInPolygonAsync requests; "
+            + "their events will not fire.")
+    public void CancelPendingCalculations() {
+        areaRequest.incrementAndGet();
+        hitTestRequest.incrementAndGet();
+        if (pendingArea != null) pendingArea.cancel(false);
+        if (pendingHitTest != null) pendingHitTest.cancel(false);
+        pendingArea = null;
+        pendingHitTest = null;
+    }
+
+    @SimpleFunction(description = "Returns up to 'count' points of the selected ring starting at index 'start' (0-based), "
+            + "as a list of [x, y] pairs.")
+    public YailList GetAreaPointsRange(int start, int count) {
+        int from = Math.max(0, start);
+        int to = (int) Math.min(areaPoints.size(), (long) from + Math.max(0, count));
+        List<YailList> yailPoints = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            yailPoints.add(YailList.makeList(new Object[]{areaPoints.getX(i), areaPoints.getY(i)}));
+        }
+        return YailList.makeList(yailPoints);
+    }
+
     @SimpleFunction(description = "Returns the area points as a List.")
     public YailList GetAreaPointsAsList() {
-        List<YailList> yailPoints = new ArrayList<>();
-        for (double[] point : areaPoints) {
-            yailPoints.add(YailList.makeList(new Object[]{point[0], point[1]}));
+        int n = areaPoints.size();
+        List<YailList> yailPoints = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            yailPoints.add(YailList.makeList(new Object[]{areaPoints.getX(i), areaPoints.getY(i)}));
         }
         return YailList.makeList(yailPoints);
     }
     
     @SimpleFunction(description = "Checks whether a point is inside the polygon.")
     public boolean IsPointInPolygon(double x, double y) {
-        boolean inside = false;
-        int n = areaPoints.size();
-        for (int i = 0, j = n - 1; i < n; j = i++) {
-            if ((areaPoints.get(i)[1] > y) != (areaPoints.get(j)[1] > y) &&
-                (x < (areaPoints.get(j)[0] - areaPoints.get(i)[0]) * (y - areaPoints.get(i)[1]) / (areaPoints.get(j)[1]-areaPoints.get(i)[1]) + areaPoints.get(i)[0])) {
-                inside = !inside;
+        if (preparedPolygon) {
+            return polygonIndex.contains(areaPoints, x, y);
+        }
+        return PolygonIndex.containsLinear(areaPoints, x, y);
+    }
+
+    @SimpleFunction(description = "Adds a new empty ring and selects it, so new points go to it. "
+            + "Holes are subtracted from the total area. Returns the ring id.")
+    public int AddRing(boolean isHole) {
+        int id = rings.addRing(isHole);
+        onRingSelected();
+        return id;
+    }
+
+    @SimpleFunction(description = "Selects the ring that receives new points and that CalculateArea, "
+            + "GetAreaPerimeter and IsPointInPolygon work on.")
+    public void SelectRing(int ringId) {
+        if (!rings.select(ringId)) {
+            ReportError("Ring not found: " + ringId);
+            return;
+        }
+        onRingSelected();
+    }
+
+    @SimpleFunction(description = "Removes a ring. Removing the selected ring selects the first remaining one.")
+    public void RemoveRing(int ringId) {
+        if (!rings.remove(ringId)) {
+            ReportError("Ring not found: " + ringId);
+            return;
+        }
+        onRingSelected();
+    }
+
+    @SimpleFunction(description = "Marks a ring as a hole (subtracted from the total area) or as an outer boundary.")
+    public void SetRingHole(int ringId, boolean isHole) {
+        if (!rings.setHole(ringId, isHole)) {
+            ReportError("Ring not found: " + ringId);
+        }
+    }
+
+    @SimpleFunction(description = "Returns the ids of all rings.")
+    public YailList GetRingIds() {
+        int[] ids = rings.ids();
+        Object[] items = new Object[ids.length];
+        for (int i = 0; i < ids.length; i++) items[i] = ids[i];
+        return YailList.makeList(items);
+    }
+
+    @SimpleFunction(description = "Returns the area of a ring in the drawing order, in the same units as CalculateArea.")
+    public double GetRingArea(int ringId) {
+        PointBuffer points = rings.points(ringId);
+        return points == null ? 0.0 : calibration.area(points);
+    }
+
+    @SimpleFunction(description = "Returns the perimeter of a ring, in the same units as GetAreaPerimeter.")
+    public double GetRingPerimeter(int ringId) {
+        PointBuffer points = rings.points(ringId);
+        return points == null ? 0.0 : metricPerimeter(points);
+    }
+
+    @SimpleFunction(description = "Returns the bounding box of a ring as [minX, minY, maxX, maxY], "
+            + "or an empty list if the ring does not exist or has no points.")
+    public YailList GetRingBounds(int ringId) {
+        double[] bounds = rings.bounds(ringId);
+        if (bounds == null) return YailList.makeEmptyList();
+        return YailList.makeList(new Object[]{bounds[0], bounds[1], bounds[2], bounds[3]});
+    }
+
+    @SimpleFunction(description = "Returns the area of all outer rings minus all holes, in the same units as CalculateArea.")
+    public double GetTotalArea() {
+        if (!calibration.isPerspective()) return scaleArea(rings.totalArea());
+        // Com perspectiva o fator varia no plano: soma anel a anel
+        double total = 0;
+        for (int id : rings.ids()) {
+            double area = calibration.area(rings.points(id));
+            total += rings.isHole(id) ? -area : area;
+        }
+        return Math.max(0.0, total);
+    }
+
+    @SimpleFunction(description = "Checks whether a point is inside any outer ring and outside every hole.")
+    public boolean IsPointInRegion(double x, double y) {
+        return rings.containsPoint(x, y);
+    }
+
+    @SimpleFunction(description = "Checks a list of points against the polygon and returns a list of booleans "
+            + "in the same order. Invalid items yield false.\nExample: [[x1, y1], [x2, y2], etc]")
+    public YailList ArePointsInPolygon(YailList points) {
+        Object[] items = points.toArray();
+        Object[] results = new Object[items.length];
+        for (int i = 0; i < items.length; i++) {
+            boolean inside = false;
+            if (items[i] instanceof YailList) {
+                YailList point = (YailList) items[i];
+                if (point.size() == 2 && point.get(1) instanceof Number && point.get(2) instanceof Number) {
+                    inside = polygonIndex.contains(areaPoints,
+                            ((Number) point.get(1)).doubleValue(), ((Number) point.get(2)).doubleValue());
+                }
             }
+            results[i] = inside;
+        }
+        return YailList.makeList(results);
+    }
+
+    @SimpleFunction(description = "Undoes the last stroke (DrawLine, DrawPolyline, reference line, ClearCanvas or "
+            + "AddBackgroundImage), restoring both the drawing and the points it added, or the last point edit "
+            + "(UndoLastPoint, ResetAreaPoints, ImportPoints or AutoTraceRegion).")
+    public void Undo() {
+        if (history.undoDepth() == 0) return;
+        Stroke stroke = history.undo();
+        displayList.removeLast();
+        if (stroke.kind == Stroke.POINTS) {
+            // O desenho não muda: só os pontos voltam
+            applyPoints(stroke, true);
+            HistoryChanged(history.undoDepth(), history.redoDepth());
+            return;
+        }
+
+        // Volta ao checkpoint mais próximo e refaz só os traços depois dele
+        Checkpoint checkpoint = history.latestCheckpoint();
+        surface.restoreTiles(checkpoint.tiles);
+        history.restored(checkpoint);
+        for (int i = checkpoint.position; i < history.position(); i++) drawStroke(history.stroke(i));
+        applyPoints(stroke, true);
+
+        markAllDirty();
+        RedrawCanvas();
+        HistoryChanged(history.undoDepth(), history.redoDepth());
+    }
+
+    @SimpleFunction(description = "Redoes the last undone stroke.")
+    public void Redo() {
+        if (history.redoDepth() == 0) return;
+        Stroke stroke = history.redo();
+        displayList.add(stroke);
+        applyPoints(stroke, false);
+        if (stroke.kind != Stroke.POINTS) {
+            drawStroke(stroke);
+            RedrawCanvas();
         }
-        return inside;
+        HistoryChanged(history.undoDepth(), history.redoDepth());
+    }
+
+    @SimpleFunction(description = "Forgets all undo and redo history.")
+    public void ClearHistory() {
+        resetHistory();
     }
 
-    @SimpleFunction(description = "Undoes the addition of the last point.")
+    @SimpleFunction(description = "Undoes the addition of the last point. The drawing is not changed; use Undo to revert a whole stroke.")
     public void UndoLastPoint() {
         if (!areaPoints.isEmpty()) {
-            areaPoints.remove(areaPoints.size() - 1);
+            Stroke edit = beginPointsEdit(areaPoints.size() - 1);
+            areaPoints.removeLast();
+            onAreaPointsChanged();
+            endStroke(edit, false);
         }
     }
 
     @SimpleFunction(description = "Imports points into the polygon.\n"
     		+ "Example: [[x1, y1], [x2, y2], etc]")
     public void ImportPoints(YailList pointsList) {
-        ResetAreaPoints();
-        for (Object o : pointsList.toArray()) {
-            if (o instanceof YailList) {
-                YailList point = (YailList) o;
-                if (point.size() == 2) {
-                    AddAreaPoint(((Number) point.get(1)).doubleValue(), ((Number) point.get(2)).doubleValue());
-                }
-            }
-        }
+        double[] coords = toPackedPoints(pointsList);
+        Stroke edit = beginPointsEdit(0);
+        areaPoints.clear();
+        areaPoints.addAll(coords, coords.length / 2);
+        onAreaPointsChanged();
+        endStroke(edit, false);
     }
     
-    @SimpleFunction(description = "Set canvas dimensions.")
+    @SimpleFunction(description = "Set canvas dimensions. The strokes in the undo history are redrawn at the new size and "
+            + "stay undoable.")
     public void SetCanvasSize(int newWidth, int newHeight) {
         if (newWidth <= 0 || newHeight <= 0) {
         	if (flagLog) Log.e(LOG_NAME, "Dimensões inválidas para o bitmap: Largura e altura devem ser positivas.");
@@ -345,26 +1041,48 @@ public class CalculateCanvasArea extends AndroidNonvisibleComponent {
             return;
         }
 
+        if (newWidth == canvasWidth && newHeight == canvasHeight) return;
+
+        long started = metrics.start();
         try {
-            // Redimensiona o bitmap mantendo seu conteúdo
-            Bitmap resizedBitmap = Bitmap.createBitmap(newWidth, newHeight, drawingBitmap.getConfig());
-            android.graphics.Canvas canvas = new android.graphics.Canvas(resizedBitmap);
-            canvas.drawColor(Color.TRANSPARENT);
-            Bitmap scaledBitmap = Bitmap.createScaledBitmap(drawingBitmap, newWidth, newHeight, true);
-            canvas.drawBitmap(scaledBitmap, 0, 0, null);
+            TiledSurface resized = new TiledSurface(newWidth, newHeight, maxResidentTiles, context.getCacheDir(), metrics);
+            Map<Long, byte[]> base = history.baseTiles();
+            boolean keepHistory = base != null;
+            if (keepHistory) {
+                // Só a base do histórico é reamostrada; os traços guardados são redesenhados nítidos na nova escala
+                if (!base.isEmpty()) {
+                    TiledSurface baseSurface = new TiledSurface(canvasWidth, canvasHeight, maxResidentTiles,
+                                                                context.getCacheDir(), metrics);
+                    baseSurface.restoreTiles(base);
+                    resized.resampleFrom(baseSurface);
+                    baseSurface.release();
+                }
+                rebuildHistory(resized);
+            } else {
+                // Sem histórico, a superfície inteira é a base: redimensiona tile a tile
+                resized.resampleFrom(surface);
+            }
 
             // Atualiza as variáveis de largura e altura do canvas
             canvasWidth = newWidth;
             canvasHeight = newHeight;
 
-            // Substitui o bitmap de desenho
-            drawingBitmap = resizedBitmap;
+            // Substitui a superfície de desenho
+            surface.release();
+            surface = resized;
+            releaseBackgroundLayer();
+            if (!keepHistory) resetHistory();
 
             // Redesenha o canvas se necessário
+            markAllDirty();
             RedrawCanvas();
         } catch (Exception e) {
         	if (flagLog) Log.e(LOG_NAME, "Erro ao redimensionar o bitmap: " + e.getMessage(), e);
             ReportError("Erro ao redimensionar o bitmap.");
+            // Os checkpoints podem ter ficado pela metade
+            resetHistory();
+        } finally {
+            metrics.record(Metrics.OP_CANVAS_SIZE, started);
         }
     }
     
@@ -374,42 +1092,29 @@ public class CalculateCanvasArea extends AndroidNonvisibleComponent {
     
     @SimpleProperty(category = PropertyCategory.BEHAVIOR, description = "Loads an image from a path and adds it to the active layer.")
     public void AddBackgroundImage(@Asset final String imagePath) {
-        if (drawingBitmap == null) {
+        if (surface == null) {
         	if (flagLog) Log.e(LOG_NAME, "No active layer to add image.");
             ReportError("No active layer to add image.");
             return;
         }
 
+        long started = metrics.start();
         try {
-            Bitmap imageBitmap = BitmapFactory.decodeFile(imagePath);
-
-            if (imageBitmap == null) {
-                try {
-                    Drawable drawable = MediaUtil.getBitmapDrawable(container.$form(), imagePath);
-                    imageBitmap = ((BitmapDrawable) drawable).getBitmap();
-                } catch (Exception e) {
-                    throw new Exception("Failed to load image.");
-                }
-            }
-
-            // Redimensionar a imagem para o tamanho do Canvas
-            Bitmap resizedImageBitmap = Bitmap.createScaledBitmap(imageBitmap, canvasWidth, canvasHeight, true);
+            Stroke stroke = beginStroke(new Stroke(Stroke.IMAGE, null, 0, 0f, imagePath), false);
+            if (!drawStroke(stroke)) return;
 
-            // Create a canvas to draw on the layer
-            android.graphics.Canvas canvas = new android.graphics.Canvas(drawingBitmap);
-            canvas.drawBitmap(resizedImageBitmap, 0, 0, null); // Draw the resized image
-
-            // Redraw the canvas
+            // Checkpoint logo após a imagem, para que desfazer não precise decodificá-la de novo
+            endStroke(stroke, true);
             RedrawCanvas();
-        } catch (Exception e) {
-        	if (flagLog) Log.e(LOG_NAME, "Error adding image to layer: " + e.getMessage(), e);
-            ReportError("Error adding image to layer: " + e.getMessage());
+        } finally {
+            metrics.record(Metrics.OP_BACKGROUND_IMAGE, started);
         }
     }
     
     @SimpleProperty(category = PropertyCategory.BEHAVIOR, description = "Sets the Canvas component used for drawing.")
     public void SetCanvas(Canvas canvas) {
         this.canvasComponent = canvas;
+        this.displayAttached = false;
         SetCanvasMonitoring(canvas);
     }
 
@@ -423,86 +1128,2427 @@ public class CalculateCanvasArea extends AndroidNonvisibleComponent {
         return this.canvasHeight;
     }
 
-    /*
-     * EVENTS
-     */
-    @SimpleEvent(description = "Report an error with a custom message")
-    public void ReportError(String errorMessage) {
-        EventDispatcher.dispatchEvent(this, "ReportError", errorMessage);
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_CHOICES,
+            editorArgs = {OrderedView.AS_DRAWN, OrderedView.SORTED, OrderedView.CONVEX_HULL},
+            defaultValue = OrderedView.SORTED)
+    @SimpleProperty(description = "How CalculateArea orders the points: AsDrawn keeps the trace order "
+            + "(correct for concave outlines), Sorted orders them by angle around the lowest point, "
+            + "ConvexHull uses their convex hull. The stored points are never reordered.")
+    public void PolygonOrdering(String mode) {
+        if (OrderedView.AS_DRAWN.equalsIgnoreCase(mode)) {
+            polygonOrdering = OrderedView.AS_DRAWN;
+        } else if (OrderedView.SORTED.equalsIgnoreCase(mode)) {
+            polygonOrdering = OrderedView.SORTED;
+        } else if (OrderedView.CONVEX_HULL.equalsIgnoreCase(mode)) {
+            polygonOrdering = OrderedView.CONVEX_HULL;
+        } else {
+            ReportError("Invalid polygon ordering: " + mode);
+        }
     }
 
-    @SimpleEvent(description = "Triggered when the Canvas size changes.")
-    public void CanvasSizeChanged(int width, int height) {
-        EventDispatcher.dispatchEvent(this, "CanvasSizeChanged", width, height);
+    @SimpleProperty(category = PropertyCategory.BEHAVIOR)
+    public String PolygonOrdering() {
+        return this.polygonOrdering;
     }
 
-    /*
-     * PRIVATE METHODS
-     */
-
-    private void RedrawCanvas() {
-        if (canvasComponent != null) {
-            Bitmap finalBitmap = Bitmap.createBitmap(canvasWidth, canvasHeight, Bitmap.Config.ARGB_8888);
-            android.graphics.Canvas finalCanvas = new android.graphics.Canvas(finalBitmap);
-
-            // Desenha todas as camadas
-            finalCanvas.drawBitmap(drawingBitmap, 0, 0, null);
-
-            // Desenha a linha temporaria
-            Paint linePaint = new Paint();
-            linePaint.setColor(lineColor); // Usa a cor definida
-            linePaint.setStrokeWidth(5); // Usa a espessura definida
-            finalCanvas.drawLine((float) lineStartPoint.getX(), (float) lineStartPoint.getY(), (float) lineEndPoint.getX(), (float) lineEndPoint.getY(), linePaint);
-
-            // Atualiza o Canvas do componente
-            canvasComponent.getView().setBackground(new BitmapDrawable(context.getResources(), finalBitmap));
-            canvasComponent.getView().invalidate();
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_CHOICES,
+            editorArgs = {GrayscaleTask.MODE_AVERAGE, GrayscaleTask.MODE_REC601, GrayscaleTask.MODE_REC709},
+            defaultValue = GrayscaleTask.MODE_AVERAGE)
+    @SimpleProperty(description = "How ConvertToGrayscale computes the gray level: "
+            + "Average (plain RGB average), Rec601 or Rec709 (luminance-weighted).")
+    public void GrayscaleMode(String mode) {
+        if (GrayscaleTask.MODE_AVERAGE.equalsIgnoreCase(mode)) {
+            grayscaleMode = GrayscaleTask.MODE_AVERAGE;
+        } else if (GrayscaleTask.MODE_REC601.equalsIgnoreCase(mode)) {
+            grayscaleMode = GrayscaleTask.MODE_REC601;
+        } else if (GrayscaleTask.MODE_REC709.equalsIgnoreCase(mode)) {
+            grayscaleMode = GrayscaleTask.MODE_REC709;
+        } else {
+            ReportError("Invalid grayscale mode: " + mode);
+        }
+    }
+
+    @SimpleProperty(category = PropertyCategory.BEHAVIOR)
+    public String GrayscaleMode() {
+        return this.grayscaleMode;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "False")
+    @SimpleProperty(description = "If true, AutoTraceRegion compares gray levels (see GrayscaleMode) instead of "
+            + "colors, which is steadier on photos.")
+    public void AutoTraceGrayscale(boolean enabled) {
+        this.autoTraceGrayscale = enabled;
+    }
+
+    @SimpleProperty(category = PropertyCategory.BEHAVIOR)
+    public boolean AutoTraceGrayscale() {
+        return this.autoTraceGrayscale;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+            defaultValue = TiledSurface.DEFAULT_MAX_RESIDENT_TILES + "")
+    @SimpleProperty(description = "Maximum number of 256x256 drawing tiles kept in memory. "
+            + "Least recently used tiles beyond this are compressed to a cache file.")
+    public void MaxResidentTiles(int count) {
+        this.maxResidentTiles = Math.max(1, count);
+        if (surface != null) surface.setMaxResidentTiles(this.maxResidentTiles);
+    }
+
+    @SimpleProperty(category = PropertyCategory.BEHAVIOR)
+    public int MaxResidentTiles() {
+        return this.maxResidentTiles;
+    }
+
+    @SimpleProperty(category = PropertyCategory.BEHAVIOR, description = "Number of display pixels recomposed in the last rendered frame.")
+    public int PixelsTouchedLastFrame() {
+        return this.pixelsTouchedLastFrame;
+    }
+
+    @SimpleProperty(category = PropertyCategory.BEHAVIOR, description = "Version of the selected ring's points; "
+            + "it changes on every edit and tags the results of the async calculations.")
+    public int PointsVersion() {
+        return this.pointsVersion;
+    }
+
+    @SimpleProperty(category = PropertyCategory.BEHAVIOR, description = "Pixels counted by the last CalculateColorArea or CalculateFilledArea.")
+    public int RasterPixelCount() {
+        return this.rasterPixelCount;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_FLOAT, defaultValue = "0")
+    @SimpleProperty(description = "Tolerance in pixels for simplifying traced points as they are added by "
+            + "AddAreaPoint, DrawLine and DrawPolyline. Every dropped sample stays within this distance of the "
+            + "stored outline. 0 disables simplification.")
+    public void SimplifyTolerance(float tolerance) {
+        this.simplifyTolerance = Math.max(0f, tolerance);
+        simplifier.setTolerance(this.simplifyTolerance);
+    }
+
+    @SimpleProperty(category = PropertyCategory.BEHAVIOR)
+    public float SimplifyTolerance() {
+        return this.simplifyTolerance;
+    }
+
+    @SimpleProperty(category = PropertyCategory.BEHAVIOR, description = "Id of the selected ring.")
+    public int SelectedRing() {
+        return rings.selectedId();
+    }
+
+    @SimpleProperty(category = PropertyCategory.BEHAVIOR, description = "Number of samples received by the simplifier "
+            + "since the last reset, undo or import.")
+    public int RawPointsCount() {
+        return simplifier.rawCount(areaPoints);
+    }
+
+    @SimpleProperty(category = PropertyCategory.BEHAVIOR, description = "Difference, in square pixels, between the "
+            + "area of the raw samples and the area of the simplified points since the last reset, undo or import.")
+    public double SimplificationAreaError() {
+        return simplifier.areaError(areaPoints);
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "False")
+    @SimpleProperty(description = "Collects latency, allocation and redraw metrics for GetMetrics. "
+            + "When off, instrumented blocks only pay a field read.")
+    public void MetricsEnabled(boolean enabled) {
+        metrics.enabled = enabled;
+        scheduleMetricsReport();
+    }
+
+    @SimpleProperty(category = PropertyCategory.BEHAVIOR)
+    public boolean MetricsEnabled() {
+        return metrics.enabled;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "0")
+    @SimpleProperty(description = "Interval in milliseconds between MetricsReport events while MetricsEnabled is on. "
+            + "0 disables the periodic report.")
+    public void MetricsReportInterval(int intervalMs) {
+        this.metricsReportInterval = Math.max(0, intervalMs);
+        scheduleMetricsReport();
+    }
+
+    @SimpleProperty(category = PropertyCategory.BEHAVIOR)
+    public int MetricsReportInterval() {
+        return this.metricsReportInterval;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "8192")
+    @SimpleProperty(description = "Memory budget in KB for the undo history (strokes plus compressed checkpoints). "
+            + "The oldest history is dropped when it is exceeded.")
+    public void HistoryMemoryLimit(int kilobytes) {
+        history.setMaxBytes(Math.max(0, kilobytes) * 1024L);
+        trimDisplayList();
+        HistoryChanged(history.undoDepth(), history.redoDepth());
+    }
+
+    @SimpleProperty(category = PropertyCategory.BEHAVIOR)
+    public int HistoryMemoryLimit() {
+        return (int) (history.maxBytes() / 1024);
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "16")
+    @SimpleProperty(description = "Number of strokes between compressed checkpoints of the drawing. "
+            + "Undo restores the nearest checkpoint and replays at most this many strokes.")
+    public void CheckpointInterval(int strokes) {
+        history.checkpointInterval = Math.max(1, strokes);
+    }
+
+    @SimpleProperty(category = PropertyCategory.BEHAVIOR)
+    public int CheckpointInterval() {
+        return history.checkpointInterval;
+    }
+
+    @SimpleProperty(category = PropertyCategory.BEHAVIOR, description = "Number of strokes that can be undone.")
+    public int UndoDepth() {
+        return history.undoDepth();
+    }
+
+    @SimpleProperty(category = PropertyCategory.BEHAVIOR, description = "Number of strokes that can be redone.")
+    public int RedoDepth() {
+        return history.redoDepth();
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "False")
+    @SimpleProperty(description = "When enabled, SaveSession also stores the drawing as a PNG.")
+    public void SessionIncludesDrawing(boolean enabled) {
+        this.sessionIncludesDrawing = enabled;
+    }
+
+    @SimpleProperty(category = PropertyCategory.BEHAVIOR)
+    public boolean SessionIncludesDrawing() {
+        return this.sessionIncludesDrawing;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "False")
+    @SimpleProperty(description = "When enabled, IsPointInPolygon uses an edge index that is built on the first "
+            + "query and rebuilt only after the points change. Use it when testing many points against the same polygon.")
+    public void PreparedPolygon(boolean enabled) {
+        this.preparedPolygon = enabled;
+    }
+
+    @SimpleProperty(category = PropertyCategory.BEHAVIOR)
+    public boolean PreparedPolygon() {
+        return this.preparedPolygon;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "False")
+    @SimpleProperty(description = "When enabled, AreaUpdated fires at most once per frame after points are added "
+            + "or undone. With PolygonOrdering set to AsDrawn the area is kept up to date in constant time.")
+    public void LiveMeasurement(boolean enabled) {
+        this.liveMeasurement = enabled;
+        if (enabled) onAreaPointsChanged();
+    }
+
+    @SimpleProperty(category = PropertyCategory.BEHAVIOR)
+    public boolean LiveMeasurement() {
+        return this.liveMeasurement;
+    }
+
+    /*
+     * EVENTS
+     */
+    @SimpleEvent(description = "Report an error with a custom message")
+    public void ReportError(String errorMessage) {
+        EventDispatcher.dispatchEvent(this, "ReportError", errorMessage);
+    }
+
+    @SimpleEvent(description = "Triggered when the Canvas size changes.")
+    public void CanvasSizeChanged(int width, int height) {
+        EventDispatcher.dispatchEvent(this, "CanvasSizeChanged", width, height);
+    }
+
+    @SimpleEvent(description = "Triggered when ConvertToGrayscaleAsync finishes, with the path of the converted image.")
+    public void GrayscaleConverted(String path) {
+        EventDispatcher.dispatchEvent(this, "GrayscaleConverted", path);
+    }
+
+    @SimpleEvent(description = "Triggered with the result of CalculateAreaAsync and the PointsVersion it was computed for.")
+    public void AreaCalculated(double area, double perimeter, int version) {
+        EventDispatcher.dispatchEvent(this, "AreaCalculated", area, perimeter, version);
+    }
+
+    @SimpleEvent(description = "Triggered with the result of IsPointInPolygonAsync and the PointsVersion it was computed for.")
+    public void PointInPolygonChecked(double x, double y, boolean inside, int version) {
+        EventDispatcher.dispatchEvent(this, "PointInPolygonChecked", x, y, inside, version);
+    }
+
+    @SimpleEvent(description = "Triggered when ExportPoints has finished writing the file.")
+    public void PointsExported(String path, int pointCount) {
+        EventDispatcher.dispatchEvent(this, "PointsExported", path, pointCount);
+    }
+
+    @SimpleEvent(description = "Triggered when the undo history changes, with the number of strokes "
+            + "that can be undone and redone.")
+    public void HistoryChanged(int undoDepth, int redoDepth) {
+        EventDispatcher.dispatchEvent(this, "HistoryChanged", undoDepth, redoDepth);
+    }
+
+    @SimpleEvent(description = "Triggered every MetricsReportInterval milliseconds while MetricsEnabled is on, "
+            + "with the same dictionary returned by GetMetrics.")
+    public void MetricsReport(YailDictionary metrics) {
+        EventDispatcher.dispatchEvent(this, "MetricsReport", metrics);
+    }
+
+    @SimpleEvent(description = "Triggered at most once per frame while LiveMeasurement is enabled "
+            + "with the current area and perimeter of the green region.")
+    public void AreaUpdated(double area, double perimeter) {
+        EventDispatcher.dispatchEvent(this, "AreaUpdated", area, perimeter);
+    }
+
+    /*
+     * PRIVATE METHODS
+     */
+
+    // Pede um redesenho; várias chamadas no mesmo quadro resultam em uma só composição
+    private void RedrawCanvas() {
+        if (canvasComponent != null) {
+            redrawPending = true;
+            scheduleFrame();
+        }
+    }
+
+    private void renderFrame() {
+        if (canvasComponent == null || surface == null) return;
+        long started = metrics.start();
+        try {
+            composeFrame();
+        } finally {
+            metrics.record(Metrics.OP_REDRAW, started);
+        }
+    }
+
+    private void composeFrame() {
+        if (ensureDisplayBuffers()) {
+            // Buffers novos ou escala nova: os dois precisam ser compostos por inteiro
+            dirty.invalidateBuffers(canvasWidth, canvasHeight);
+        }
+
+        // A linha temporária suja a posição antiga e a nova
+        dirty.moveLine(lineStartPoint.getX(), lineStartPoint.getY(), lineEndPoint.getX(), lineEndPoint.getY(), linePaint.getStrokeWidth());
+
+        if (!dirty.beginFrame(canvasWidth, canvasHeight)) {
+            // Nada mudou; o back continua atrasado na região anterior
+            pixelsTouchedLastFrame = 0;
+            return;
+        }
+        composeRect.set(dirty.composeLeft(), dirty.composeTop(), dirty.composeRight(), dirty.composeBottom());
+
+        displayRect.set((int) Math.floor(composeRect.left * displayScaleX), (int) Math.floor(composeRect.top * displayScaleY),
+                        (int) Math.ceil(composeRect.right * displayScaleX), (int) Math.ceil(composeRect.bottom * displayScaleY));
+
+        composeCanvas.setBitmap(backBuffer);
+        composeCanvas.save();
+        composeCanvas.clipRect(displayRect);
+        composeCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        composeCanvas.scale(displayScaleX, displayScaleY);
+
+        // Desenha todas as camadas
+        surface.composeInto(composeCanvas, composeRect, tilePaint);
+
+        // Desenha a linha temporaria
+        linePaint.setColor(lineColor); // Usa a cor definida
+        composeCanvas.drawLine((float) lineStartPoint.getX(), (float) lineStartPoint.getY(), (float) lineEndPoint.getX(), (float) lineEndPoint.getY(), linePaint);
+        composeCanvas.restore();
+        composeCanvas.setBitmap(null);
+
+        pixelsTouchedLastFrame = displayRect.width() * displayRect.height();
+        dirty.endFrame();
+
+        // Troca os buffers: o front passa a ser o recém-composto
+        Bitmap shown = backBuffer;
+        backBuffer = frontBuffer;
+        frontBuffer = shown;
+        displayDrawable.setBitmap(frontBuffer);
+
+        // Atualiza o Canvas do componente
+        View view = canvasComponent.getView();
+        if (!displayAttached) {
+            view.setBackground(displayDrawable);
+            displayAttached = true;
+        } else {
+            // O fundo é esticado até o tamanho da View; converte a região para coordenadas da View
+            float scaleX = (float) view.getWidth() / frontBuffer.getWidth();
+            float scaleY = (float) view.getHeight() / frontBuffer.getHeight();
+            view.invalidate((int) Math.floor(displayRect.left * scaleX), (int) Math.floor(displayRect.top * scaleY),
+                            (int) Math.ceil(displayRect.right * scaleX), (int) Math.ceil(displayRect.bottom * scaleY));
+        }
+    }
+
+    // Antes de desenhar: garante o checkpoint base e guarda os pontos que o traço pode alterar
+    private Stroke beginStroke(Stroke stroke, boolean changesPoints) {
+        history.ensureBase(surface);
+        if (changesPoints) stroke.pointsBefore(rings.selectedId(), areaPoints);
+        return stroke;
+    }
+
+    // Alteração só dos pontos a partir de 'from'; entra no histórico para o Undo e o Redo seguirem em ordem
+    private Stroke beginPointsEdit(int from) {
+        history.ensureBase(surface);
+        Stroke stroke = new Stroke(Stroke.POINTS, null, 0, 0f, null);
+        stroke.pointsBefore(rings.selectedId(), areaPoints, from);
+        return stroke;
+    }
+
+    private void endStroke(Stroke stroke, boolean checkpoint) {
+        if (stroke.ringId >= 0) stroke.pointsAfter(areaPoints);
+        history.record(stroke, surface, checkpoint);
+        displayList.add(stroke);
+        trimDisplayList();
+        HistoryChanged(history.undoDepth(), history.redoDepth());
+    }
+
+    // A lista de exibição acompanha o histórico: o que o histórico descartou já está nos tiles do checkpoint base
+    private void trimDisplayList() {
+        displayList.dropFirst(displayList.size() - history.position());
+    }
+
+    private void resetHistory() {
+        history.reset();
+        trimDisplayList();
+        // Sem traços guardados, o espaço dos traços volta a ser o tamanho atual
+        strokeSpaceWidth = canvasWidth;
+        strokeSpaceHeight = canvasHeight;
+        HistoryChanged(0, 0);
+    }
+
+    // Converte coordenadas do canvas (x, y intercalados) para o espaço dos traços, no próprio array
+    private float[] toStrokeSpace(float[] xy) {
+        float scaleX = (float) canvasWidth / strokeSpaceWidth, scaleY = (float) canvasHeight / strokeSpaceHeight;
+        for (int i = 0; i < xy.length; i += 2) {
+            xy[i] /= scaleX;
+            xy[i + 1] /= scaleY;
+        }
+        return xy;
+    }
+
+    // Desenha o traço na superfície e marca a região alterada; usado ao desenhar e ao refazer
+    private boolean drawStroke(Stroke stroke) {
+        int length = stroke.coords == null ? 0 : stroke.coords.length;
+        if (!drawOp(surface, stroke.kind, stroke.coords, 0, length, stroke.color, stroke.width, stroke.imagePath)) {
+            return false;
+        }
+        if (stroke.kind == Stroke.SEGMENT || stroke.kind == Stroke.REFERENCE) {
+            // Na escala em que drawOp desenhou
+            float[] c = stroke.coords;
+            float scaleX = (float) canvasWidth / strokeSpaceWidth, scaleY = (float) canvasHeight / strokeSpaceHeight;
+            dirty.addSegment(c[0] * scaleX, c[1] * scaleY, c[2] * scaleX, c[3] * scaleY,
+                             stroke.width * (float) Math.sqrt(scaleX * scaleY));
+        } else if (stroke.kind == Stroke.POLYLINE) {
+            // drawOp deixa em strokeBounds a caixa do traço com a espessura
+            dirty.add((int) Math.floor(strokeBounds.left), (int) Math.floor(strokeBounds.top),
+                            (int) Math.ceil(strokeBounds.right), (int) Math.ceil(strokeBounds.bottom));
+        } else {
+            markAllDirty();
+        }
+        return true;
+    }
+
+    // Desenha um comando (coords[offset, offset + length), no espaço dos traços) em 'target', na escala do alvo;
+    // compartilhado com a lista de exibição
+    private boolean drawOp(TiledSurface target, int kind, float[] c, int offset, int length,
+                           int color, float width, String imagePath) {
+        float scaleX = (float) target.getWidth() / strokeSpaceWidth;
+        float scaleY = (float) target.getHeight() / strokeSpaceHeight;
+        width *= (float) Math.sqrt(scaleX * scaleY);
+        float pad = width / 2f + 1f;
+        switch (kind) {
+            case Stroke.SEGMENT:
+            case Stroke.REFERENCE:
+                Paint paint = kind == Stroke.SEGMENT ? strokePaint : linePaint;
+                paint.setColor(color);
+                paint.setStrokeWidth(width);
+                float x0 = c[offset] * scaleX, y0 = c[offset + 1] * scaleY;
+                float x1 = c[offset + 2] * scaleX, y1 = c[offset + 3] * scaleY;
+                target.drawLine(x0, y0, x1, y1, paint);
+                return true;
+            case Stroke.POLYLINE:
+                // Um único Path para todo o lote
+                float firstX = c[offset] * scaleX, firstY = c[offset + 1] * scaleY;
+                float minX = firstX, maxX = firstX, minY = firstY, maxY = firstY;
+                strokePath.rewind();
+                strokePath.moveTo(firstX, firstY);
+                for (int i = offset + 2; i < offset + length; i += 2) {
+                    float x = c[i] * scaleX, y = c[i + 1] * scaleY;
+                    strokePath.lineTo(x, y);
+                    if (x < minX) minX = x; else if (x > maxX) maxX = x;
+                    if (y < minY) minY = y; else if (y > maxY) maxY = y;
+                }
+                if (length == 2) strokePath.lineTo(firstX, firstY);
+
+                strokePaint.setColor(color);
+                strokePaint.setStrokeWidth(width);
+                strokeBounds.set(minX - pad, minY - pad, maxX + pad, maxY + pad);
+                target.drawPath(strokePath, strokeBounds, strokePaint);
+                return true;
+            case Stroke.CLEAR:
+                target.clear();
+                return true;
+            case Stroke.IMAGE:
+                try {
+                    if (imageLoader == null) imageLoader = new SampledImageLoader(container.$form(), metrics);
+
+                    // Decodifica já reduzida e desenha esticada até o tamanho do alvo
+                    imageLoader.drawInto(target, imagePath, target.getWidth(), target.getHeight());
+                    return true;
+                } catch (Exception e) {
+                	if (flagLog) Log.e(LOG_NAME, "Error adding image to layer: " + e.getMessage(), e);
+                    ReportError("Error adding image to layer: " + e.getMessage());
+                    return false;
+                }
+            default:
+                return false;
+        }
+    }
+
+    // Redesenha a lista de exibição sobre a base já reamostrada em 'target', recapturando os checkpoints do
+    // histórico nas mesmas posições; os traços que podem ser refeitos continuam no histórico
+    private void rebuildHistory(TiledSurface target) {
+        int[] positions = history.beginRebuild();
+        float[] coords = displayList.coords();
+        int next = 0;
+        for (int i = 0; i <= displayList.size(); i++) {
+            if (next < positions.length && positions[next] == i) history.rebuildCheckpoint(positions[next++], target);
+            if (i == displayList.size()) break;
+            drawOp(target, displayList.kind(i), coords, displayList.offset(i), displayList.length(i),
+                   displayList.color(i), displayList.width(i), displayList.imagePath(i));
+        }
+        history.endRebuild();
+        trimDisplayList();
+        HistoryChanged(history.undoDepth(), history.redoDepth());
+    }
+
+    // Desfaz (before) ou refaz (after) os pontos do traço no anel em que foram adicionados
+    private void applyPoints(Stroke stroke, boolean undo) {
+        if (stroke.ringId < 0 || !rings.contains(stroke.ringId)) return;
+        int selectedId = rings.selectedId();
+        rings.select(stroke.ringId);
+        PointBuffer points = rings.selectedPoints();
+        double[] xy = undo ? stroke.before : stroke.after;
+        points.truncate(Math.min(stroke.from, points.size()));
+        points.addAll(xy, xy.length / 2);
+        rings.select(selectedId);
+        onRingSelected();
+    }
+
+    private void markAllDirty() {
+        dirty.markAll(canvasWidth, canvasHeight);
+    }
+
+    // (Re)aloca os buffers de exibição apenas quando o tamanho do canvas ou da View muda
+    private boolean ensureDisplayBuffers() {
+        View view = canvasComponent.getView();
+        int displayWidth = view.getWidth() > 0 ? Math.min(canvasWidth, view.getWidth()) : canvasWidth;
+        int displayHeight = view.getHeight() > 0 ? Math.min(canvasHeight, view.getHeight()) : canvasHeight;
+        float scaleX = (float) displayWidth / canvasWidth;
+        float scaleY = (float) displayHeight / canvasHeight;
+        boolean sameSize = frontBuffer != null && frontBuffer.getWidth() == displayWidth && frontBuffer.getHeight() == displayHeight;
+        if (sameSize && scaleX == displayScaleX && scaleY == displayScaleY) {
+            return false;
+        }
+        displayScaleX = scaleX;
+        displayScaleY = scaleY;
+        if (!sameSize) {
+            if (frontBuffer != null) frontBuffer.recycle();
+            if (backBuffer != null) backBuffer.recycle();
+            frontBuffer = Bitmap.createBitmap(displayWidth, displayHeight, Bitmap.Config.ARGB_8888);
+            backBuffer = Bitmap.createBitmap(displayWidth, displayHeight, Bitmap.Config.ARGB_8888);
+            metrics.bitmapAllocated(frontBuffer);
+            metrics.bitmapAllocated(backBuffer);
+            displayDrawable.setBitmap(frontBuffer);
+        }
+        return true;
+    }
+
+    private static synchronized ForkJoinPool bandPool() {
+        if (bandPool == null) {
+            bandPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return bandPool;
+    }
+
+    private static synchronized ExecutorService backgroundExecutor() {
+        if (backgroundExecutor == null) {
+            // Uma thread só: veja a declaração
+            backgroundExecutor = Executors.newSingleThreadExecutor();
+        }
+        return backgroundExecutor;
+    }
+
+    // Converte [[x1, y1], [x2, y2], ...] em [x1, y1, x2, y2, ...]; itens que não são um par de
+    // números (listas de outro tamanho, textos, etc.) são ignorados
+    private static double[] toPackedPoints(YailList pointsList) {
+        Object[] items = pointsList.toArray();
+        double[] coords = new double[items.length * 2];
+        int count = 0;
+        for (Object o : items) {
+            if (o instanceof YailList) {
+                YailList point = (YailList) o;
+                if (point.size() == 2 && point.get(1) instanceof Number && point.get(2) instanceof Number) {
+                    coords[count * 2] = ((Number) point.get(1)).doubleValue();
+                    coords[count * 2 + 1] = ((Number) point.get(2)).doubleValue();
+                    count++;
+                }
+            }
+        }
+        return count == items.length ? coords : Arrays.copyOf(coords, count * 2);
+    }
+
+    /*
+     * Session file, version 3, little-endian:
+     *   header (32 bytes)   magic "CCAS", version, flags (bit 0: drawing present, bit 1: perspective
+     *                       present), ring count, selected ring id, canvas width, canvas height, reserved
+     *   ring table          per ring: id, hole (0/1), vertex count, reserved (16 bytes)
+     *   calibration         12 float64: red start x/y, red end x/y, blue start x/y, blue end x/y,
+     *                       red length, blue length, actual red length, actual blue length
+     *   perspective         (if flagged) 16 float64: four image x/y pairs, then four world x/y pairs
+     *   vertices            per ring, in table order: count x/y float64 pairs
+     *   drawing (optional)  tile count, reserved, then per tile: column, row, int64 length and
+     *                       the tile's PNG bytes, zero-padded to a multiple of 8
+     * Every section is a multiple of 8 bytes, so the vertex block is read as an
+     * aligned DoubleBuffer view of the mapped file. Version 1 files, whose
+     * drawing is an int64 length and one PNG of the whole canvas, still load;
+     * files before version 3 have no perspective and loading them clears it.
+     * Everything is validated and parsed into locals before any state changes.
+     */
+    private static final int SESSION_MAGIC = 0x53414343; // "CCAS" em little-endian
+    private static final int SESSION_VERSION = 3;
+    private static final int SESSION_FLAG_DRAWING = 1;
+    private static final int SESSION_FLAG_PERSPECTIVE = 2;
+    private static final int SESSION_HEADER_BYTES = 32;
+    private static final int SESSION_RING_BYTES = 16;
+    private static final int SESSION_TILE_BYTES = 16;
+    private static final int SESSION_CALIBRATION_DOUBLES = 12;
+    private static final int SESSION_PERSPECTIVE_DOUBLES = 16;
+
+    private void writeSession(File file, Map<Long, byte[]> tiles) throws IOException {
+        int[] ids = rings.ids();
+        long vertexBytes = 0;
+        for (int id : ids) vertexBytes += 16L * rings.points(id).size();
+        long drawingBytes = 0;
+        if (tiles != null) {
+            drawingBytes = 8;
+            for (byte[] png : tiles.values()) drawingBytes += SESSION_TILE_BYTES + padded(png.length);
+        }
+        double[] perspective = calibration.perspectivePoints();
+        long size = SESSION_HEADER_BYTES + (long) SESSION_RING_BYTES * ids.length
+                + 8L * SESSION_CALIBRATION_DOUBLES + (perspective != null ? 8L * SESSION_PERSPECTIVE_DOUBLES : 0)
+                + vertexBytes + drawingBytes;
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(size);
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.putInt(SESSION_MAGIC);
+            buffer.putInt(SESSION_VERSION);
+            buffer.putInt((tiles != null ? SESSION_FLAG_DRAWING : 0) | (perspective != null ? SESSION_FLAG_PERSPECTIVE : 0));
+            buffer.putInt(ids.length);
+            buffer.putInt(rings.selectedId());
+            buffer.putInt(canvasWidth);
+            buffer.putInt(canvasHeight);
+            buffer.putInt(0);
+
+            for (int id : ids) {
+                buffer.putInt(id);
+                buffer.putInt(rings.isHole(id) ? 1 : 0);
+                buffer.putInt(rings.points(id).size());
+                buffer.putInt(0);
+            }
+
+            buffer.putDouble(startRedLine[0]).putDouble(startRedLine[1]);
+            buffer.putDouble(endRedLine[0]).putDouble(endRedLine[1]);
+            buffer.putDouble(startBlueLine[0]).putDouble(startBlueLine[1]);
+            buffer.putDouble(endBlueLine[0]).putDouble(endBlueLine[1]);
+            buffer.putDouble(lengthRedLineInMeters).putDouble(lengthBlueLineInMeters);
+            buffer.putDouble(actualLengthRed).putDouble(actualLengthBlue);
+            if (perspective != null) {
+                for (double value : perspective) buffer.putDouble(value);
+            }
+
+            // Vértices em bloco pela visão DoubleBuffer
+            DoubleBuffer vertices = buffer.asDoubleBuffer();
+            for (int id : ids) rings.points(id).writeTo(vertices);
+            buffer.position(buffer.position() + vertices.position() * 8);
+
+            if (tiles != null) {
+                buffer.putInt(tiles.size());
+                buffer.putInt(0);
+                for (Map.Entry<Long, byte[]> entry : tiles.entrySet()) {
+                    long key = entry.getKey();
+                    byte[] png = entry.getValue();
+                    buffer.putInt((int) key);          // coluna
+                    buffer.putInt((int) (key >>> 32)); // linha
+                    buffer.putLong(png.length);
+                    buffer.put(png);
+                    buffer.position(buffer.position() + (int) (padded(png.length) - png.length));
+                }
+            }
+            buffer.force();
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void readSession(File file) throws IOException {
+        int ringCount, selectedId, savedWidth, savedHeight;
+        int[] ids;
+        boolean[] holes;
+        double[][] ringPoints;
+        double[] saved = new double[SESSION_CALIBRATION_DOUBLES];
+        double[] perspective = null;
+        byte[] png = null;
+        Map<Long, byte[]> tiles = null;
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.remaining() < SESSION_HEADER_BYTES || buffer.getInt() != SESSION_MAGIC) {
+                throw new IOException("Not a session file.");
+            }
+            int version = buffer.getInt();
+            if (version < 1 || version > SESSION_VERSION) throw new IOException("Unsupported session version: " + version);
+            int flags = buffer.getInt();
+            ringCount = buffer.getInt();
+            selectedId = buffer.getInt();
+            savedWidth = buffer.getInt();
+            savedHeight = buffer.getInt();
+            buffer.getInt();
+
+            // Tamanhos conferidos contra o que resta do arquivo antes de qualquer alocação
+            if (ringCount < 0 || (long) ringCount * SESSION_RING_BYTES > buffer.remaining()) {
+                throw new IOException("Corrupt session file: invalid ring count " + ringCount + ".");
+            }
+            ids = new int[ringCount];
+            holes = new boolean[ringCount];
+            int[] counts = new int[ringCount];
+            HashSet<Integer> seen = new HashSet<>();
+            long vertexBytes = 0;
+            for (int i = 0; i < ringCount; i++) {
+                ids[i] = buffer.getInt();
+                holes[i] = buffer.getInt() != 0;
+                counts[i] = buffer.getInt();
+                buffer.getInt();
+                if (ids[i] <= 0 || !seen.add(ids[i])) {
+                    throw new IOException("Corrupt session file: invalid ring id " + ids[i] + ".");
+                }
+                if (counts[i] < 0) throw new IOException("Corrupt session file: invalid vertex count " + counts[i] + ".");
+                vertexBytes += 16L * counts[i];
+            }
+            boolean hasPerspective = version >= 3 && (flags & SESSION_FLAG_PERSPECTIVE) != 0;
+            long calibrationBytes = 8L * (SESSION_CALIBRATION_DOUBLES + (hasPerspective ? SESSION_PERSPECTIVE_DOUBLES : 0));
+            if (buffer.remaining() < calibrationBytes + vertexBytes) {
+                throw new IOException("Truncated session file.");
+            }
+
+            for (int i = 0; i < saved.length; i++) saved[i] = buffer.getDouble();
+            if (hasPerspective) {
+                perspective = new double[SESSION_PERSPECTIVE_DOUBLES];
+                for (int i = 0; i < perspective.length; i++) perspective[i] = buffer.getDouble();
+                if (!new Calibration().setPerspective(Arrays.copyOfRange(perspective, 0, 8),
+                                                      Arrays.copyOfRange(perspective, 8, 16))) {
+                    throw new IOException("Corrupt session file: degenerate perspective points.");
+                }
+            }
+
+            DoubleBuffer vertices = buffer.asDoubleBuffer();
+            ringPoints = new double[ringCount][];
+            for (int i = 0; i < ringCount; i++) {
+                ringPoints[i] = new double[counts[i] * 2];
+                vertices.get(ringPoints[i]);
+            }
+            buffer.position(buffer.position() + vertices.position() * 8);
+
+            if ((flags & SESSION_FLAG_DRAWING) != 0) {
+                if (savedWidth <= 0 || savedHeight <= 0) {
+                    throw new IOException("Corrupt session file: invalid canvas size " + savedWidth + "x" + savedHeight + ".");
+                }
+                if (version == 1) {
+                    png = readSessionBytes(buffer);
+                } else {
+                    tiles = readSessionTiles(buffer, savedWidth, savedHeight);
+                }
+            }
+        } finally {
+            raf.close();
+        }
+
+        // O desenho da versão 1 é decodificado antes de mudar qualquer estado
+        Bitmap drawing = null;
+        if (png != null) {
+            drawing = BitmapFactory.decodeByteArray(png, 0, png.length);
+            if (drawing == null) throw new IOException("Invalid drawing in session file.");
+        }
+
+        // Tudo validado: só agora o estado atual é substituído
+        startRedLine[0] = saved[0];
+        startRedLine[1] = saved[1];
+        endRedLine[0] = saved[2];
+        endRedLine[1] = saved[3];
+        startBlueLine[0] = saved[4];
+        startBlueLine[1] = saved[5];
+        endBlueLine[0] = saved[6];
+        endBlueLine[1] = saved[7];
+        lengthRedLineInMeters = saved[8];
+        lengthBlueLineInMeters = saved[9];
+        actualLengthRed = saved[10];
+        actualLengthBlue = saved[11];
+        updateCalibration();
+        if (perspective != null) {
+            calibration.setPerspective(Arrays.copyOfRange(perspective, 0, 8), Arrays.copyOfRange(perspective, 8, 16));
+        } else {
+            calibration.clearPerspective();
+        }
+
+        rings.beginRestore();
+        for (int i = 0; i < ringCount; i++) {
+            rings.restoreRing(ids[i], holes[i]).addAll(ringPoints[i], ringPoints[i].length / 2);
+        }
+        rings.endRestore(selectedId);
+
+        onRingSelected();
+        resetHistory();
+
+        if (drawing != null || tiles != null) {
+            if (savedWidth != canvasWidth || savedHeight != canvasHeight) {
+                surface.release();
+                canvasWidth = savedWidth;
+                canvasHeight = savedHeight;
+                strokeSpaceWidth = savedWidth;
+                strokeSpaceHeight = savedHeight;
+                surface = new TiledSurface(canvasWidth, canvasHeight, maxResidentTiles, context.getCacheDir(), metrics);
+            }
+            if (tiles != null) {
+                surface.restoreTiles(tiles);
+            } else {
+                surface.clear();
+                surface.drawBitmap(drawing, new RectF(0, 0, canvasWidth, canvasHeight), null);
+                drawing.recycle();
+            }
+            displayList.reset();
+            releaseBackgroundLayer();
+            markAllDirty();
+            RedrawCanvas();
+        }
+    }
+
+    // int64 length followed by that many bytes (the version 1 drawing)
+    private static byte[] readSessionBytes(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 8) throw new IOException("Truncated session file.");
+        long length = buffer.getLong();
+        if (length < 0 || length > buffer.remaining()) throw new IOException("Truncated session file.");
+        byte[] bytes = new byte[(int) length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static Map<Long, byte[]> readSessionTiles(ByteBuffer buffer, int width, int height) throws IOException {
+        int columns = (width + TiledSurface.TILE_SIZE - 1) / TiledSurface.TILE_SIZE;
+        int rows = (height + TiledSurface.TILE_SIZE - 1) / TiledSurface.TILE_SIZE;
+        if (buffer.remaining() < 8) throw new IOException("Truncated session file.");
+        int count = buffer.getInt();
+        buffer.getInt();
+        if (count < 0 || count > (long) columns * rows || (long) count * SESSION_TILE_BYTES > buffer.remaining()) {
+            throw new IOException("Corrupt session file: invalid tile count " + count + ".");
+        }
+
+        HashMap<Long, byte[]> tiles = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            if (buffer.remaining() < SESSION_TILE_BYTES) throw new IOException("Truncated session file.");
+            int column = buffer.getInt(), row = buffer.getInt();
+            long length = buffer.getLong();
+            if (column < 0 || column >= columns || row < 0 || row >= rows) {
+                throw new IOException("Corrupt session file: tile " + column + "," + row + " outside the canvas.");
+            }
+            if (length < 0 || padded(length) > buffer.remaining()) throw new IOException("Truncated session file.");
+            byte[] png = new byte[(int) length];
+            buffer.get(png);
+            buffer.position(buffer.position() + (int) (padded(length) - length));
+            if (tiles.put(((long) row << 32) | column, png) != null) {
+                throw new IOException("Corrupt session file: tile " + column + "," + row + " repeated.");
+            }
+        }
+        return tiles;
+    }
+
+    // Arredonda para o próximo múltiplo de 8
+    private static long padded(long length) {
+        return (length + 7) & ~7L;
+    }
+
+    // Caminhos relativos ficam na pasta de arquivos externos do app
+    private File resolvePath(String path) {
+        File file = new File(path);
+        if (file.isAbsolute()) return file;
+        return new File(container.$form().getExternalFilesDir(null), path);
+    }
+
+    private void onRingSelected() {
+        areaPoints = rings.selectedPoints();
+        simplifier.reset();
+        onAreaPointsChanged();
+    }
+
+    // Snapshot imutável dos pontos atuais, reaproveitado enquanto a versão não muda
+    private PointSnapshot snapshot() {
+        PointSnapshot snapshot = PointSnapshot.of(pointsSnapshot, areaPoints, pointsVersion);
+        pointsSnapshot = snapshot;
+        return snapshot;
+    }
+
+    private void onAreaPointsChanged() {
+        pointsVersion++;
+        if (!liveMeasurement) return;
+        areaUpdatePending = true;
+        scheduleFrame();
+    }
+
+    private final Runnable metricsReportRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!metrics.enabled || metricsReportInterval <= 0) return;
+            MetricsReport(GetMetrics());
+            uiHandler.postDelayed(this, metricsReportInterval);
+        }
+    };
+
+    private void scheduleMetricsReport() {
+        uiHandler.removeCallbacks(metricsReportRunnable);
+        if (metrics.enabled && metricsReportInterval > 0) {
+            uiHandler.postDelayed(metricsReportRunnable, metricsReportInterval);
+        }
+    }
+
+    private final Runnable frameRunnable = new Runnable() {
+        @Override
+        public void run() {
+            runFrame();
+        }
+    };
+
+    private Choreographer.FrameCallback frameCallback;
+
+    // Agenda runFrame() para o próximo vsync; chamadas repetidas no mesmo quadro são agrupadas
+    private void scheduleFrame() {
+        if (frameScheduled) return;
+        frameScheduled = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            if (frameCallback == null) {
+                frameCallback = new Choreographer.FrameCallback() {
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        runFrame();
+                    }
+                };
+            }
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        } else {
+            uiHandler.postDelayed(frameRunnable, FRAME_INTERVAL_MS);
+        }
+    }
+
+    private void runFrame() {
+        frameScheduled = false;
+        if (redrawPending) {
+            redrawPending = false;
+            renderFrame();
+        }
+        if (areaUpdatePending) {
+            areaUpdatePending = false;
+            AreaUpdated(metricArea(), metricPerimeter(areaPoints));
         }
     }
 
     public void SetCanvasMonitoring(final Canvas canvas) {
         final View view = canvas.getView();
 
-        // Posterga a verificação até que a View esteja completamente carregada
-        view.post(new Runnable() {
-            @Override
-            public void run() {
-                view.getViewTreeObserver().addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener() {
-                    @Override
-                    public void onGlobalLayout() {
-                        // Remove o listener para evitar chamadas múltiplas
-                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
-                            view.getViewTreeObserver().removeOnGlobalLayoutListener(this);
-                        } else {
-                            view.getViewTreeObserver().removeGlobalOnLayoutListener(this);
-                        }
+        // Posterga a verificação até que a View esteja completamente carregada
+        view.post(new Runnable() {
+            @Override
+            public void run() {
+                view.getViewTreeObserver().addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener() {
+                    @Override
+                    public void onGlobalLayout() {
+                        // Remove o listener para evitar chamadas múltiplas
+                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                            view.getViewTreeObserver().removeOnGlobalLayoutListener(this);
+                        } else {
+                            view.getViewTreeObserver().removeGlobalOnLayoutListener(this);
+                        }
+
+                        int newWidth = view.getWidth();
+                        int newHeight = view.getHeight();
+
+                        // Dispara o evento com a nova largura e altura
+                        CanvasSizeChanged(newWidth, newHeight);
+                    }
+                });
+            }
+        });
+    }
+        
+    /*
+     * Drawing layer split into TILE_SIZE x TILE_SIZE tiles that are only
+     * allocated where something is drawn. At most maxResidentTiles stay in
+     * memory; the least recently used ones are compressed to PNG files in a
+     * spill directory and decoded back when they are drawn on. Reads (compose,
+     * resample, getPixel) decode a spilled tile into a scratch bitmap instead,
+     * so they never restore tiles or evict others. Spill directories are named
+     * after the process, and those left by earlier processes are deleted in
+     * the background when the first surface is created.
+     */
+    static class TiledSurface {
+        static final int TILE_SIZE = 256;
+        static final int DEFAULT_MAX_RESIDENT_TILES = 64;
+        private static final int MAX_POOLED_TILES = 4;
+        private static int nextSurfaceId = 0;
+        private static boolean staleSpillDirsCleared = false;
+
+        private final int width, height;
+        private final int columns, rows;
+        private final File spillDir;
+        private int maxResidentTiles;
+
+        // Ordem de acesso: o primeiro é o menos usado recentemente
+        private final LinkedHashMap<Long, Bitmap> resident = new LinkedHashMap<>(16, 0.75f, true);
+        private final HashSet<Long> spilled = new HashSet<>();
+        private final ArrayDeque<Bitmap> pool = new ArrayDeque<>();
+        private Bitmap scratch; // tile em disco lido só para consulta; válido até a próxima leitura
+
+        // Tiles desenhados desde o último captureTiles/restoreTiles
+        private final HashSet<Long> touched = new HashSet<>();
+
+        private final android.graphics.Canvas tileCanvas = new android.graphics.Canvas();
+        private final Paint filterPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        private final Metrics metrics;
+
+        TiledSurface(int width, int height, int maxResidentTiles, File cacheDir, Metrics metrics) {
+            this.metrics = metrics;
+            this.width = width;
+            this.height = height;
+            this.columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+            this.rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+            this.maxResidentTiles = Math.max(1, maxResidentTiles);
+            int pid = android.os.Process.myPid();
+            clearStaleSpillDirs(new File(cacheDir, "canvas_tiles"), pid + "-");
+            this.spillDir = new File(cacheDir, "canvas_tiles/" + pid + "-" + nextSurfaceId());
+        }
+
+        private static synchronized int nextSurfaceId() {
+            return nextSurfaceId++;
+        }
+
+        // Uma vez por processo: apaga em segundo plano os diretórios de spill de processos anteriores
+        private static synchronized void clearStaleSpillDirs(final File root, final String currentPrefix) {
+            if (staleSpillDirsCleared) return;
+            staleSpillDirsCleared = true;
+            final File[] dirs = root.listFiles();
+            if (dirs == null) return;
+            backgroundExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (File dir : dirs) {
+                        if (dir.getName().startsWith(currentPrefix)) continue;
+                        File[] files = dir.listFiles();
+                        if (files != null) {
+                            for (File file : files) file.delete();
+                        }
+                        dir.delete();
+                    }
+                }
+            });
+        }
+
+        int getWidth() {
+            return width;
+        }
+
+        int getHeight() {
+            return height;
+        }
+
+        int getColumns() {
+            return columns;
+        }
+
+        int getRows() {
+            return rows;
+        }
+
+        // Cor do pixel; áreas sem tile são transparentes
+        int getPixel(int x, int y) {
+            Bitmap tile = peekTile(x / TILE_SIZE, y / TILE_SIZE);
+            return tile == null ? Color.TRANSPARENT : tile.getPixel(x % TILE_SIZE, y % TILE_SIZE);
+        }
+
+        // Bitmaps residentes e arquivos de spill por tile (índice ty * columns + tx),
+        // para leitura em outras threads sem alterar a ordem do LRU
+        void snapshotTiles(Bitmap[] bitmaps, File[] files) {
+            for (Map.Entry<Long, Bitmap> entry : resident.entrySet()) {
+                bitmaps[index(entry.getKey())] = entry.getValue();
+            }
+            for (Long key : spilled) files[index(key)] = spillFile(key);
+        }
+
+        int residentTileCount() {
+            return resident.size();
+        }
+
+        int spilledTileCount() {
+            return spilled.size();
+        }
+
+        void setMaxResidentTiles(int maxResidentTiles) {
+            this.maxResidentTiles = Math.max(1, maxResidentTiles);
+            evictIfNeeded();
+        }
+
+        void drawLine(float x0, float y0, float x1, float y1, Paint paint) {
+            float pad = paint.getStrokeWidth() / 2f + 1f;
+            int left = firstColumn(Math.min(x0, x1) - pad), right = lastColumn(Math.max(x0, x1) + pad);
+            int top = firstRow(Math.min(y0, y1) - pad), bottom = lastRow(Math.max(y0, y1) + pad);
+            for (int ty = top; ty <= bottom; ty++) {
+                for (int tx = left; tx <= right; tx++) {
+                    if (!beginTile(tx, ty, true)) continue;
+                    tileCanvas.drawLine(x0, y0, x1, y1, paint);
+                    endTile();
+                }
+            }
+        }
+
+        // 'bounds' deve conter o traçado inteiro, incluindo a espessura
+        void drawPath(Path path, RectF bounds, Paint paint) {
+            int left = firstColumn(bounds.left), right = lastColumn(bounds.right);
+            int top = firstRow(bounds.top), bottom = lastRow(bounds.bottom);
+            for (int ty = top; ty <= bottom; ty++) {
+                for (int tx = left; tx <= right; tx++) {
+                    if (!beginTile(tx, ty, true)) continue;
+                    tileCanvas.drawPath(path, paint);
+                    endTile();
+                }
+            }
+        }
+
+        void drawBitmap(Bitmap bitmap, RectF destination, Paint paint) {
+            drawBitmap(bitmap, null, destination, paint);
+        }
+
+        // 'source' (null = o bitmap inteiro) é a parte do bitmap esticada sobre 'destination'
+        void drawBitmap(Bitmap bitmap, Rect source, RectF destination, Paint paint) {
+            int left = firstColumn(destination.left), right = lastColumn(destination.right);
+            int top = firstRow(destination.top), bottom = lastRow(destination.bottom);
+            for (int ty = top; ty <= bottom; ty++) {
+                for (int tx = left; tx <= right; tx++) {
+                    if (!beginTile(tx, ty, true)) continue;
+                    tileCanvas.drawBitmap(bitmap, source, destination, paint);
+                    endTile();
+                }
+            }
+        }
+
+        // Desenha os tiles existentes que cruzam 'region' (coordenadas do canvas) no canvas de destino
+        void composeInto(android.graphics.Canvas canvas, Rect region, Paint paint) {
+            int left = firstColumn(region.left), right = lastColumn(region.right);
+            int top = firstRow(region.top), bottom = lastRow(region.bottom);
+            for (int ty = top; ty <= bottom; ty++) {
+                for (int tx = left; tx <= right; tx++) {
+                    Bitmap tile = peekTile(tx, ty);
+                    if (tile != null) canvas.drawBitmap(tile, tx * TILE_SIZE, ty * TILE_SIZE, paint);
+                }
+            }
+        }
+
+        // Copia 'source' redimensionado para este tamanho, um tile de destino por vez
+        void resampleFrom(TiledSurface source) {
+            float scaleX = (float) width / source.width;
+            float scaleY = (float) height / source.height;
+            for (int ty = 0; ty < rows; ty++) {
+                for (int tx = 0; tx < columns; tx++) {
+                    // Região correspondente na superfície de origem
+                    float srcLeft = tx * TILE_SIZE / scaleX, srcRight = (tx + 1) * TILE_SIZE / scaleX;
+                    float srcTop = ty * TILE_SIZE / scaleY, srcBottom = (ty + 1) * TILE_SIZE / scaleY;
+                    int left = source.firstColumn(srcLeft - 1), right = source.lastColumn(srcRight + 1);
+                    int top = source.firstRow(srcTop - 1), bottom = source.lastRow(srcBottom + 1);
+                    if (!source.hasTiles(left, top, right, bottom)) continue;
+
+                    beginTile(tx, ty, true);
+                    tileCanvas.scale(scaleX, scaleY);
+                    for (int sy = top; sy <= bottom; sy++) {
+                        for (int sx = left; sx <= right; sx++) {
+                            Bitmap tile = source.peekTile(sx, sy);
+                            if (tile != null) tileCanvas.drawBitmap(tile, sx * TILE_SIZE, sy * TILE_SIZE, filterPaint);
+                        }
+                    }
+                    endTile();
+                }
+            }
+        }
+
+        // Descarta todos os tiles (equivale a um bitmap transparente)
+        void clear() {
+            for (Bitmap bitmap : resident.values()) recycleTile(bitmap);
+            resident.clear();
+            for (Long key : spilled) spillFile(key).delete();
+            spilled.clear();
+        }
+
+        // Todos os tiles como PNG. Tiles não desenhados desde a última captura ou
+        // restauração reaproveitam os bytes de 'previous' em vez de comprimir de novo.
+        Map<Long, byte[]> captureTiles(Map<Long, byte[]> previous) {
+            Map<Long, byte[]> tiles = encodeTiles(previous);
+            touched.clear();
+            return tiles;
+        }
+
+        // Como captureTiles, mas sem marcar a captura (para salvar sem afetar os checkpoints)
+        Map<Long, byte[]> encodeTiles(Map<Long, byte[]> previous) {
+            HashMap<Long, byte[]> tiles = new HashMap<>();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (Map.Entry<Long, Bitmap> entry : resident.entrySet()) {
+                Long key = entry.getKey();
+                byte[] bytes = touched.contains(key) || previous == null ? null : previous.get(key);
+                if (bytes == null) {
+                    out.reset();
+                    entry.getValue().compress(Bitmap.CompressFormat.PNG, 100, out);
+                    bytes = out.toByteArray();
+                }
+                tiles.put(key, bytes);
+            }
+            for (Long key : spilled) {
+                byte[] bytes = touched.contains(key) || previous == null ? null : previous.get(key);
+                // O arquivo de spill já é o PNG do tile
+                if (bytes == null) bytes = readSpill(key);
+                if (bytes != null) tiles.put(key, bytes);
+            }
+            return tiles;
+        }
+
+        // Substitui o conteúdo pelos tiles capturados; o que não cabe na memória vai direto para o disco
+        void restoreTiles(Map<Long, byte[]> tiles) {
+            clear();
+            for (Map.Entry<Long, byte[]> entry : tiles.entrySet()) {
+                Long key = entry.getKey();
+                byte[] bytes = entry.getValue();
+                if (resident.size() >= maxResidentTiles && writeSpill(key, bytes)) continue;
+
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inMutable = true;
+                options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+                options.inBitmap = pool.poll();
+                Bitmap tile;
+                try {
+                    tile = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+                } catch (IllegalArgumentException e) {
+                    options.inBitmap = null;
+                    tile = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+                }
+                if (tile == null) continue;
+                if (tile != options.inBitmap) metrics.bitmapAllocated(tile);
+                resident.put(key, tile);
+            }
+            touched.clear();
+        }
+
+        void release() {
+            clear();
+            for (Bitmap bitmap : pool) bitmap.recycle();
+            pool.clear();
+            if (scratch != null) {
+                scratch.recycle();
+                scratch = null;
+            }
+            spillDir.delete();
+        }
+
+        private boolean hasTiles(int left, int top, int right, int bottom) {
+            for (int ty = top; ty <= bottom; ty++) {
+                for (int tx = left; tx <= right; tx++) {
+                    Long key = key(tx, ty);
+                    if (resident.containsKey(key) || spilled.contains(key)) return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean beginTile(int tx, int ty, boolean create) {
+            Bitmap tile = tile(tx, ty, create);
+            if (tile == null) return false;
+            touched.add(key(tx, ty));
+            tileCanvas.setBitmap(tile);
+            tileCanvas.save();
+            tileCanvas.translate(-tx * TILE_SIZE, -ty * TILE_SIZE);
+            return true;
+        }
+
+        private void endTile() {
+            tileCanvas.restore();
+            tileCanvas.setBitmap(null);
+        }
+
+        private Bitmap tile(int tx, int ty, boolean create) {
+            Long key = key(tx, ty);
+            Bitmap tile = resident.get(key);
+            if (tile != null) return tile;
+
+            if (spilled.remove(key)) {
+                tile = restore(key);
+            } else if (create) {
+                tile = obtainTile();
+            } else {
+                return null;
+            }
+            resident.put(key, tile);
+            evictIfNeeded();
+            return tile;
+        }
+
+        // Tile só para leitura: um tile em disco é decodificado no bitmap de rascunho,
+        // sem voltar para a memória nem expulsar outro (o que faria o spill oscilar)
+        private Bitmap peekTile(int tx, int ty) {
+            Long key = key(tx, ty);
+            Bitmap tile = resident.get(key);
+            if (tile != null || !spilled.contains(key)) return tile;
+
+            String path = spillFile(key).getAbsolutePath();
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inMutable = true;
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            options.inBitmap = scratch;
+            try {
+                tile = BitmapFactory.decodeFile(path, options);
+            } catch (IllegalArgumentException e) {
+                options.inBitmap = null;
+                tile = BitmapFactory.decodeFile(path, options);
+            }
+            if (tile == null) return null;
+            if (tile != scratch) {
+                if (scratch != null) scratch.recycle();
+                metrics.bitmapAllocated(tile);
+                scratch = tile;
+            }
+            return tile;
+        }
+
+        private void evictIfNeeded() {
+            Iterator<Map.Entry<Long, Bitmap>> it = resident.entrySet().iterator();
+            while (resident.size() > maxResidentTiles && it.hasNext()) {
+                Map.Entry<Long, Bitmap> eldest = it.next();
+                if (spill(eldest.getKey(), eldest.getValue())) {
+                    it.remove();
+                    recycleTile(eldest.getValue());
+                } else {
+                    break; // sem espaço em disco: mantém em memória
+                }
+            }
+        }
+
+        private boolean spill(Long key, Bitmap tile) {
+            try {
+                spillDir.mkdirs();
+                OutputStream out = new FileOutputStream(spillFile(key));
+                try {
+                    tile.compress(Bitmap.CompressFormat.PNG, 100, out);
+                } finally {
+                    out.close();
+                }
+                spilled.add(key);
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        private Bitmap restore(Long key) {
+            File file = spillFile(key);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inMutable = true;
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            options.inBitmap = pool.poll();
+            Bitmap tile;
+            try {
+                tile = BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+            } catch (IllegalArgumentException e) {
+                options.inBitmap = null;
+                tile = BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+            }
+            if (tile != options.inBitmap) metrics.bitmapAllocated(tile);
+            file.delete();
+            // Arquivo ilegível: o tile volta vazio em vez de derrubar o desenho
+            return tile != null ? tile : obtainTile();
+        }
+
+        private Bitmap obtainTile() {
+            Bitmap tile = pool.poll();
+            if (tile == null) {
+                tile = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+                metrics.bitmapAllocated(tile);
+                return tile;
+            }
+            tile.eraseColor(Color.TRANSPARENT);
+            return tile;
+        }
+
+        private void recycleTile(Bitmap tile) {
+            if (pool.size() < MAX_POOLED_TILES) {
+                pool.add(tile);
+            } else {
+                tile.recycle();
+            }
+        }
+
+        private byte[] readSpill(Long key) {
+            try {
+                RandomAccessFile file = new RandomAccessFile(spillFile(key), "r");
+                try {
+                    byte[] bytes = new byte[(int) file.length()];
+                    file.readFully(bytes);
+                    return bytes;
+                } finally {
+                    file.close();
+                }
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        private boolean writeSpill(Long key, byte[] bytes) {
+            try {
+                spillDir.mkdirs();
+                OutputStream out = new FileOutputStream(spillFile(key));
+                try {
+                    out.write(bytes);
+                } finally {
+                    out.close();
+                }
+                spilled.add(key);
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        private File spillFile(Long key) {
+            return new File(spillDir, Long.toHexString(key) + ".png");
+        }
+
+        private int firstColumn(float x) {
+            return Math.max(0, (int) Math.floor(x / TILE_SIZE));
+        }
+
+        private int lastColumn(float x) {
+            return Math.min(columns - 1, (int) Math.floor(x / TILE_SIZE));
+        }
+
+        private int firstRow(float y) {
+            return Math.max(0, (int) Math.floor(y / TILE_SIZE));
+        }
+
+        private int lastRow(float y) {
+            return Math.min(rows - 1, (int) Math.floor(y / TILE_SIZE));
+        }
+
+        private static Long key(int tx, int ty) {
+            return ((long) ty << 32) | (tx & 0xFFFFFFFFL);
+        }
+
+        private int index(Long key) {
+            return (int) (key >>> 32) * columns + (int) key.longValue();
+        }
+    }
+
+    /*
+     * Decodes images straight into a drawing surface without a full-resolution
+     * bitmap: bounds are read first, inSampleSize is picked for the target size
+     * and decode memory is reused through inBitmap. Sources whose sampled decode
+     * would still be far larger than the target are decoded tile by tile with
+     * BitmapRegionDecoder, so peak memory stays near one tile.
+     */
+    static class SampledImageLoader {
+        // Acima de N vezes o tamanho do alvo, decodifica por regiões
+        private static final int MAX_DECODE_FACTOR = 4;
+        private static final int REGION_TILE = 1024; // pixels decodificados por lado
+
+        private final Form form;
+        private final Metrics metrics;
+        private final Paint filterPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        private final Rect region = new Rect();
+        private final Rect decodedRegion = new Rect();
+        private final RectF destination = new RectF();
+        private Bitmap reusable;
+
+        SampledImageLoader(Form form, Metrics metrics) {
+            this.form = form;
+            this.metrics = metrics;
+        }
+
+        void drawInto(TiledSurface target, String path, int targetWidth, int targetHeight) throws IOException {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            InputStream in = open(path);
+            try {
+                BitmapFactory.decodeStream(in, null, options);
+            } finally {
+                in.close();
+            }
+            int width = options.outWidth, height = options.outHeight;
+            if (width <= 0 || height <= 0) throw new IOException("Failed to load image.");
+
+            int sampleSize = calculateInSampleSize(width, height, targetWidth, targetHeight);
+            long decodedBytes = 4L * ceilDiv(width, sampleSize) * ceilDiv(height, sampleSize);
+            long targetBytes = 4L * targetWidth * targetHeight;
+
+            try {
+                if (decodedBytes > MAX_DECODE_FACTOR * targetBytes) {
+                    drawRegions(target, path, width, height, sampleSize, targetWidth, targetHeight);
+                } else {
+                    Bitmap decoded = decode(path, width, height, sampleSize);
+                    destination.set(0, 0, targetWidth, targetHeight);
+                    target.drawBitmap(decoded, destination, filterPaint);
+                }
+            } finally {
+                // O bitmap de decodificação só serve durante uma carga; não fica preso entre imagens
+                reusable = null;
+            }
+        }
+
+        private Bitmap decode(String path, int width, int height, int sampleSize) throws IOException {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            options.inMutable = true;
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            if (canReuse(4L * ceilDiv(width, sampleSize) * ceilDiv(height, sampleSize))) {
+                options.inBitmap = reusable;
+            }
+
+            Bitmap decoded;
+            InputStream in = open(path);
+            try {
+                decoded = BitmapFactory.decodeStream(in, null, options);
+            } catch (IllegalArgumentException e) {
+                // inBitmap incompatível: tenta de novo sem reutilizar
+                in.close();
+                options.inBitmap = null;
+                in = open(path);
+                decoded = BitmapFactory.decodeStream(in, null, options);
+            } finally {
+                in.close();
+            }
+            if (decoded == null) throw new IOException("Failed to load image.");
+            if (decoded != options.inBitmap) metrics.bitmapAllocated(decoded);
+            reusable = decoded;
+            return decoded;
+        }
+
+        private void drawRegions(TiledSurface target, String path, int width, int height, int sampleSize,
+                                 int targetWidth, int targetHeight) throws IOException {
+            BitmapRegionDecoder decoder;
+            InputStream in = open(path);
+            try {
+                decoder = BitmapRegionDecoder.newInstance(in, false);
+            } finally {
+                in.close();
+            }
+            if (decoder == null) throw new IOException("Failed to load image.");
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            options.inMutable = true;
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+
+            float scaleX = (float) targetWidth / width;
+            float scaleY = (float) targetHeight / height;
+            int tileSource = REGION_TILE * sampleSize;
+            try {
+                for (int top = 0; top < height; top += tileSource) {
+                    for (int left = 0; left < width; left += tileSource) {
+                        region.set(left, top, Math.min(left + tileSource, width), Math.min(top + tileSource, height));
+                        options.inBitmap = canReuse(4L * REGION_TILE * REGION_TILE) ? reusable : null;
+                        Bitmap tile = decoder.decodeRegion(region, options);
+                        if (tile == null) continue;
+                        if (tile != options.inBitmap) metrics.bitmapAllocated(tile);
+                        reusable = tile;
+                        // Um inBitmap reutilizado mantém o seu tamanho: só o canto superior esquerdo é desta região
+                        decodedRegion.set(0, 0, Math.min(ceilDiv(region.width(), sampleSize), tile.getWidth()),
+                                          Math.min(ceilDiv(region.height(), sampleSize), tile.getHeight()));
+                        destination.set(region.left * scaleX, region.top * scaleY, region.right * scaleX, region.bottom * scaleY);
+                        target.drawBitmap(tile, decodedRegion, destination, filterPaint);
+                    }
+                }
+            } finally {
+                decoder.recycle();
+            }
+        }
+
+        // inBitmap aceita bitmaps maiores a partir do KitKat; antes disso não arrisca
+        private boolean canReuse(long bytesNeeded) {
+            return reusable != null && !reusable.isRecycled() && reusable.isMutable()
+                    && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                    && reusable.getAllocationByteCount() >= bytesNeeded;
+        }
+
+        private InputStream open(String path) throws IOException {
+            File file = new File(path);
+            InputStream in = file.isFile() ? new FileInputStream(file) : MediaUtil.openMedia(form, path);
+            return new BufferedInputStream(in);
+        }
+
+        // Maior potência de 2 que mantém a imagem decodificada >= alvo nas duas dimensões
+        static int calculateInSampleSize(int width, int height, int targetWidth, int targetHeight) {
+            int sampleSize = 1;
+            while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+                sampleSize *= 2;
+            }
+            return sampleSize;
+        }
+
+        private static int ceilDiv(int value, int divisor) {
+            return (value + divisor - 1) / divisor;
+        }
+    }
 
-                        int newWidth = view.getWidth();
-                        int newHeight = view.getHeight();
+    /*
+     * Converts rows [top, bottom) of src into dst, splitting into bands of
+     * BAND_ROWS rows that are read and written with bulk getPixels/setPixels.
+     */
+    static class GrayscaleTask extends RecursiveAction {
+        static final String MODE_AVERAGE = Grayscale.AVERAGE;
+        static final String MODE_REC601 = Grayscale.REC601;
+        static final String MODE_REC709 = Grayscale.REC709;
+
+        private static final int BAND_ROWS = 32;
+
+        private final Bitmap src, dst;
+        private final String mode;
+        private final int top, bottom;
+
+        GrayscaleTask(Bitmap src, Bitmap dst, String mode, int top, int bottom) {
+            this.src = src;
+            this.dst = dst;
+            this.mode = mode;
+            this.top = top;
+            this.bottom = bottom;
+        }
 
-                        // Dispara o evento com a nova largura e altura
-                        CanvasSizeChanged(newWidth, newHeight);
+        @Override
+        protected void compute() {
+            if (bottom - top <= BAND_ROWS) {
+                convertBand();
+                return;
+            }
+            int middle = (top + bottom) >>> 1;
+            invokeAll(new GrayscaleTask(src, dst, mode, top, middle),
+                      new GrayscaleTask(src, dst, mode, middle, bottom));
+        }
+
+        private void convertBand() {
+            int width = src.getWidth();
+            int rows = bottom - top;
+            int[] pixels = new int[width * rows];
+            src.getPixels(pixels, 0, width, 0, top, width, rows);
+            Grayscale.convert(pixels, 0, pixels.length, mode);
+            dst.setPixels(pixels, 0, width, 0, top, width, rows);
+        }
+    }
+
+    /*
+     * One drawing command in the undo history, with enough data to draw it
+     * again. Strokes that add points also keep the selected ring's tail before
+     * and after the stroke: everything from 'from' on is replaced by 'before'
+     * on undo and by 'after' on redo (the simplifier may move the last point).
+     * POINTS entries draw nothing and only carry such a change, for the
+     * functions that edit points without drawing.
+     */
+    static class Stroke {
+        static final int SEGMENT = 0;   // DrawLine
+        static final int REFERENCE = 1; // linhas vermelha e azul
+        static final int POLYLINE = 2;
+        static final int CLEAR = 3;
+        static final int IMAGE = 4;
+        static final int POINTS = 5;    // só pontos, sem desenho
+
+        final int kind;
+        final float[] coords;
+        final int color;
+        final float width;
+        final String imagePath;
+
+        int ringId = -1;
+        int from;
+        double[] before, after;
+
+        Stroke(int kind, float[] coords, int color, float width, String imagePath) {
+            this.kind = kind;
+            this.coords = coords;
+            this.color = color;
+            this.width = width;
+            this.imagePath = imagePath;
+        }
+
+        void pointsBefore(int ringId, PointBuffer points) {
+            pointsBefore(ringId, points, Math.max(0, points.size() - 1));
+        }
+
+        // Guarda os pontos a partir de 'from', que a alteração pode trocar
+        void pointsBefore(int ringId, PointBuffer points, int from) {
+            this.ringId = ringId;
+            this.from = from;
+            this.before = points.toArray(from, points.size());
+        }
+
+        void pointsAfter(PointBuffer points) {
+            this.after = points.toArray(Math.min(from, points.size()), points.size());
+        }
+
+        long footprintBytes() {
+            long bytes = 64;
+            if (coords != null) bytes += coords.length * 4L;
+            if (before != null) bytes += before.length * 8L;
+            if (after != null) bytes += after.length * 8L;
+            return bytes;
+        }
+    }
+
+    // Drawing state after the first 'position' strokes of the history, as PNG tiles.
+    static class Checkpoint {
+        int position;
+        final Map<Long, byte[]> tiles;
+        long ownBytes; // bytes não compartilhados com o checkpoint anterior
+
+        Checkpoint(int position, Map<Long, byte[]> tiles) {
+            this.position = position;
+            this.tiles = tiles;
+        }
+    }
+
+    /*
+     * Stroke log plus compressed checkpoints every checkpointInterval drawing
+     * strokes (POINTS edits leave the pixels alone and do not count). Undo restores the latest checkpoint at or before the target and replays
+     * the few strokes after it; redo just draws the next stroke. Checkpoints
+     * share the PNG bytes of tiles that did not change, and when the budget is
+     * exceeded the oldest checkpoint and the strokes before the next one are
+     * dropped. The first checkpoint is taken lazily, right before the first
+     * stroke after a reset. After a resize the strokes are kept and the
+     * checkpoints are captured again on the new surface (beginRebuild,
+     * rebuildCheckpoint, endRebuild).
+     */
+    static class StrokeHistory {
+        private static final int TILE_ENTRY_BYTES = 48;
+
+        int checkpointInterval = 16;
+        private long maxBytes = 8192L * 1024;
+
+        private final ArrayList<Stroke> strokes = new ArrayList<>();
+        private final ArrayList<Checkpoint> checkpoints = new ArrayList<>();
+        private int cursor = 0; // traços aplicados
+        private long bytes = 0;
+        private Checkpoint base; // estado do qual os tiles intocados da superfície são cópia
+
+        void reset() {
+            strokes.clear();
+            checkpoints.clear();
+            cursor = 0;
+            bytes = 0;
+            base = null;
+        }
+
+        long maxBytes() {
+            return maxBytes;
+        }
+
+        void setMaxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            trim();
+        }
+
+        int position() {
+            return cursor;
+        }
+
+        Stroke stroke(int index) {
+            return strokes.get(index);
+        }
+
+        int undoDepth() {
+            return checkpoints.isEmpty() ? 0 : cursor - checkpoints.get(0).position;
+        }
+
+        // Tiles do checkpoint mais antigo, de onde partem os traços guardados; null sem histórico
+        Map<Long, byte[]> baseTiles() {
+            return checkpoints.isEmpty() ? null : checkpoints.get(0).tiles;
+        }
+
+        int redoDepth() {
+            return strokes.size() - cursor;
+        }
+
+        void ensureBase(TiledSurface surface) {
+            if (checkpoints.isEmpty()) addCheckpoint(cursor, surface);
+        }
+
+        void record(Stroke stroke, TiledSurface surface, boolean forceCheckpoint) {
+            // Um traço novo descarta o que podia ser refeito
+            while (strokes.size() > cursor) bytes -= strokes.remove(strokes.size() - 1).footprintBytes();
+            while (last().position > cursor) bytes -= checkpoints.remove(checkpoints.size() - 1).ownBytes;
+
+            strokes.add(stroke);
+            cursor++;
+            bytes += stroke.footprintBytes();
+            if (forceCheckpoint || drawnSinceCheckpoint() >= checkpointInterval) addCheckpoint(cursor, surface);
+            trim();
+        }
+
+        // Descarta os checkpoints e devolve as posições dos que não passam da posição atual, para
+        // recapturá-los em ordem numa superfície de outro tamanho; os traços ficam
+        int[] beginRebuild() {
+            int count = 0;
+            while (count < checkpoints.size() && checkpoints.get(count).position <= cursor) count++;
+            int[] positions = new int[count];
+            for (int i = 0; i < count; i++) positions[i] = checkpoints.get(i).position;
+            for (Checkpoint checkpoint : checkpoints) bytes -= checkpoint.ownBytes;
+            checkpoints.clear();
+            base = null;
+            return positions;
+        }
+
+        // 'surface' tem o desenho depois dos primeiros 'position' traços
+        void rebuildCheckpoint(int position, TiledSurface surface) {
+            addCheckpoint(position, surface);
+        }
+
+        void endRebuild() {
+            trim();
+        }
+
+        Stroke undo() {
+            return strokes.get(--cursor);
+        }
+
+        Stroke redo() {
+            return strokes.get(cursor++);
+        }
+
+        // Checkpoint mais recente que não passa da posição atual
+        Checkpoint latestCheckpoint() {
+            for (int i = checkpoints.size() - 1; i > 0; i--) {
+                if (checkpoints.get(i).position <= cursor) return checkpoints.get(i);
+            }
+            return checkpoints.get(0);
+        }
+
+        void restored(Checkpoint checkpoint) {
+            base = checkpoint;
+        }
+
+        private Checkpoint last() {
+            return checkpoints.get(checkpoints.size() - 1);
+        }
+
+        // Traços que mudaram pixels desde o último checkpoint, contados até checkpointInterval
+        private int drawnSinceCheckpoint() {
+            int drawn = 0;
+            for (int i = cursor - 1; i >= last().position && drawn < checkpointInterval; i--) {
+                if (strokes.get(i).kind != Stroke.POINTS) drawn++;
+            }
+            return drawn;
+        }
+
+        private void addCheckpoint(int position, TiledSurface surface) {
+            Checkpoint previous = checkpoints.isEmpty() ? null : last();
+            Checkpoint checkpoint = new Checkpoint(position, surface.captureTiles(base == null ? null : base.tiles));
+            for (Map.Entry<Long, byte[]> entry : checkpoint.tiles.entrySet()) {
+                if (previous == null || previous.tiles.get(entry.getKey()) != entry.getValue()) {
+                    checkpoint.ownBytes += entry.getValue().length + TILE_ENTRY_BYTES;
+                }
+            }
+            checkpoints.add(checkpoint);
+            bytes += checkpoint.ownBytes;
+            base = checkpoint;
+        }
+
+        private void trim() {
+            while (bytes > maxBytes && checkpoints.size() > 1) {
+                Checkpoint oldest = checkpoints.get(0);
+                Checkpoint next = checkpoints.get(1);
+                // Não descarta traços que ainda podem ser refeitos
+                if (next.position > cursor) break;
+
+                // Bytes compartilhados passam a pertencer ao próximo checkpoint
+                for (Map.Entry<Long, byte[]> entry : next.tiles.entrySet()) {
+                    if (oldest.tiles.get(entry.getKey()) == entry.getValue()) {
+                        next.ownBytes += entry.getValue().length + TILE_ENTRY_BYTES;
                     }
-                });
+                }
+                bytes -= oldest.ownBytes;
+                checkpoints.remove(0);
+
+                int dropped = next.position;
+                for (int i = 0; i < dropped; i++) bytes -= strokes.get(i).footprintBytes();
+                strokes.subList(0, dropped).clear();
+                for (Checkpoint checkpoint : checkpoints) checkpoint.position -= dropped;
+                cursor -= dropped;
             }
-        });
+        }
     }
-        
-    static class AreaCalculator {
-        static double calculateArea(ArrayList<double[]> points) {
-            double area = 0.0;
-            int n = points.size();
-            if (n < 3) return 0.0; // Um polígono válido precisa de ao menos 3 pontos
 
-            for (int i = 0; i < n; i++) {
-                double[] current = points.get(i);
-                double[] next = points.get((i + 1) % n); // Para garantir que o último ponto se conecte ao primeiro
-                area += current[0] * next[1] - next[0] * current[1];
+    /*
+     * Streams ring snapshots to CSV, GeoJSON or WKT. Text is produced through a
+     * reused StringBuilder into a 64 KB direct buffer drained to a FileChannel,
+     * so no per-point lists or boxed values are created. Each ring copy is
+     * converted to meters in bulk by the calibration (pixels when there is
+     * none) before it is written. CSV lists every finite point of every ring;
+     * GeoJSON and WKT write one polygon per outer ring with the holes whose
+     * first vertex lies inside it as interior rings (GeoJSON Polygon
+     * [outer, holes...], one WKT MULTIPOLYGON), wound outer counterclockwise
+     * and holes clockwise. Rings with fewer than 3 points or a non-finite
+     * coordinate, and holes outside every outer ring, are left out of those.
+     */
+    static class PointExporter {
+        static final int CSV = 0;
+        static final int GEOJSON = 1;
+        static final int WKT = 2;
+
+        private final int format;
+        private final Calibration calibration;
+        private final ArrayList<double[]> ringPoints = new ArrayList<>();
+        private final ArrayList<int[]> ringInfo = new ArrayList<>(); // {id, hole}
+
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        private final StringBuilder text = new StringBuilder(64);
+        private FileChannel channel;
+
+        PointExporter(int format, Calibration calibration) {
+            this.format = format;
+            this.calibration = calibration;
+        }
+
+        void addRing(int id, boolean hole, double[] xy) {
+            ringInfo.add(new int[]{id, hole ? 1 : 0});
+            ringPoints.add(xy);
+        }
+
+        // Retorna o número de pontos escritos
+        int writeTo(File file) throws IOException {
+            for (double[] xy : ringPoints) {
+                if (calibration != null) calibration.transform(xy, xy.length / 2);
+            }
+            FileOutputStream out = new FileOutputStream(file);
+            channel = out.getChannel();
+            try {
+                int count = format == CSV ? writeCsv() : writePolygons();
+                drain();
+                flush();
+                return count;
+            } finally {
+                out.close();
+            }
+        }
+
+        private int writeCsv() throws IOException {
+            int count = 0;
+            text.append("ring,hole,index,x,y\n");
+            for (int r = 0; r < ringPoints.size(); r++) {
+                double[] xy = ringPoints.get(r);
+                int id = ringInfo.get(r)[0], hole = ringInfo.get(r)[1];
+                for (int i = 0; i < xy.length / 2; i++) {
+                    if (!isFinite(xy[i * 2]) || !isFinite(xy[i * 2 + 1])) continue;
+                    text.append(id).append(',').append(hole).append(',').append(i).append(',')
+                        .append(xy[i * 2]).append(',').append(xy[i * 2 + 1]).append('\n');
+                    drainIfFull();
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private int writePolygons() throws IOException {
+            // Cada furo vai para o primeiro anel externo que contém o seu primeiro vértice
+            ArrayList<Integer> outers = new ArrayList<>();
+            for (int r = 0; r < ringPoints.size(); r++) {
+                if (ringInfo.get(r)[1] == 0 && isPolygon(ringPoints.get(r))) outers.add(r);
+            }
+            ArrayList<ArrayList<Integer>> holes = new ArrayList<>();
+            for (int o = 0; o < outers.size(); o++) holes.add(new ArrayList<Integer>());
+            for (int r = 0; r < ringPoints.size(); r++) {
+                double[] xy = ringPoints.get(r);
+                if (ringInfo.get(r)[1] == 0 || !isPolygon(xy)) continue;
+                for (int o = 0; o < outers.size(); o++) {
+                    if (contains(ringPoints.get(outers.get(o)), xy[0], xy[1])) {
+                        holes.get(o).add(r);
+                        break;
+                    }
+                }
+            }
+
+            int count = 0;
+            text.append(format == GEOJSON ? "{\"type\":\"FeatureCollection\",\"features\":[" : "MULTIPOLYGON ");
+            if (format == WKT && outers.isEmpty()) text.append("EMPTY");
+            for (int o = 0; o < outers.size(); o++) {
+                double[] outer = ringPoints.get(outers.get(o));
+                if (format == GEOJSON) {
+                    double area = Math.abs(signedArea(outer)), perimeter = perimeter(outer);
+                    for (int h : holes.get(o)) {
+                        area -= Math.abs(signedArea(ringPoints.get(h)));
+                        perimeter += perimeter(ringPoints.get(h));
+                    }
+                    if (o > 0) text.append(',');
+                    text.append("\n{\"type\":\"Feature\",\"properties\":{\"ring\":").append(ringInfo.get(outers.get(o))[0])
+                        .append(",\"holes\":[");
+                    for (int i = 0; i < holes.get(o).size(); i++) {
+                        if (i > 0) text.append(',');
+                        text.append(ringInfo.get(holes.get(o).get(i))[0]);
+                    }
+                    text.append("],\"area\":").append(area)
+                        .append(",\"perimeter\":").append(perimeter)
+                        .append("},\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[");
+                } else {
+                    text.append(o == 0 ? "((" : ", (");
+                }
+                count += writeRing(outer, true);
+                for (int h : holes.get(o)) {
+                    text.append(format == GEOJSON ? "," : ", ");
+                    count += writeRing(ringPoints.get(h), false);
+                }
+                text.append(format == GEOJSON ? "]}}" : ")");
+            }
+            if (format == GEOJSON) {
+                text.append("\n]}\n");
+            } else {
+                text.append(outers.isEmpty() ? "\n" : ")\n");
+            }
+            return count;
+        }
+
+        // Anel fechado (repete o primeiro ponto), no sentido anti-horário se 'counterclockwise'
+        private int writeRing(double[] xy, boolean counterclockwise) throws IOException {
+            int n = xy.length / 2;
+            boolean reverse = (signedArea(xy) > 0) != counterclockwise;
+            text.append(format == GEOJSON ? '[' : '(');
+            for (int i = 0; i <= n; i++) {
+                int k = i % n;
+                if (reverse) k = n - 1 - k;
+                if (format == GEOJSON) {
+                    if (i > 0) text.append(',');
+                    text.append('[').append(xy[k * 2]).append(',').append(xy[k * 2 + 1]).append(']');
+                } else {
+                    if (i > 0) text.append(", ");
+                    text.append(xy[k * 2]).append(' ').append(xy[k * 2 + 1]);
+                }
+                drainIfFull();
+            }
+            text.append(format == GEOJSON ? ']' : ')');
+            return n;
+        }
+
+        private static boolean isFinite(double value) {
+            return !Double.isNaN(value) && !Double.isInfinite(value);
+        }
+
+        // Pelo menos 3 pontos, todos finitos (NaN ou infinito invalidam o JSON e o WKT)
+        private static boolean isPolygon(double[] xy) {
+            if (xy.length < 6) return false;
+            for (double value : xy) {
+                if (!isFinite(value)) return false;
+            }
+            return true;
+        }
+
+        // Teste par-ímpar do raio horizontal
+        private static boolean contains(double[] xy, double x, double y) {
+            int n = xy.length / 2;
+            boolean inside = false;
+            for (int i = 0, j = n - 1; i < n; j = i++) {
+                double xi = xy[i * 2], yi = xy[i * 2 + 1], xj = xy[j * 2], yj = xy[j * 2 + 1];
+                if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) inside = !inside;
+            }
+            return inside;
+        }
+
+        private static double signedArea(double[] xy) {
+            int n = xy.length / 2;
+            double sum = 0;
+            for (int i = 0, j = n - 1; i < n; j = i++) {
+                sum += xy[j * 2] * xy[i * 2 + 1] - xy[i * 2] * xy[j * 2 + 1];
+            }
+            return sum / 2.0;
+        }
+
+        private static double perimeter(double[] xy) {
+            int n = xy.length / 2;
+            double sum = 0;
+            for (int i = 0, j = n - 1; i < n; j = i++) {
+                double dx = xy[i * 2] - xy[j * 2], dy = xy[i * 2 + 1] - xy[j * 2 + 1];
+                sum += Math.sqrt(dx * dx + dy * dy);
+            }
+            return sum;
+        }
+
+        private void drainIfFull() throws IOException {
+            if (text.length() >= 4096) drain();
+        }
+
+        // Copia o texto (ASCII) para o buffer, esvaziando-o no canal quando enche
+        private void drain() throws IOException {
+            for (int i = 0; i < text.length(); i++) {
+                if (!buffer.hasRemaining()) flush();
+                buffer.put((byte) text.charAt(i));
             }
-            return Math.abs(area / 2.0);
+            text.setLength(0);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
         }
     }
-    
+
+    /*
+     * Retained vector copy of the strokes still in the undo history, in
+     * primitive arrays: per command its kind, color, width and offset into one
+     * shared float[] of coordinates, in stroke space. The commands dropped from
+     * the front as the history is trimmed live on as the oldest checkpoint's
+     * pixels; SetCanvasSize resamples those and replays the list at the new
+     * size. Only the background image they leave visible is remembered.
+     */
+    static class DisplayList {
+        private int size = 0;
+        private int[] kinds = new int[16];
+        private int[] colors = new int[16];
+        private float[] widths = new float[16];
+        private int[] offsets = new int[17]; // comando i usa coords[offsets[i], offsets[i + 1])
+        private String[] imagePaths = new String[16];
+        private float[] coords = new float[256];
+        private String baseImagePath; // imagem visível no que já saiu da lista
+
+        void add(Stroke stroke) {
+            int length = stroke.coords == null ? 0 : stroke.coords.length;
+            if (size == kinds.length) {
+                int capacity = size + (size >> 1);
+                kinds = Arrays.copyOf(kinds, capacity);
+                colors = Arrays.copyOf(colors, capacity);
+                widths = Arrays.copyOf(widths, capacity);
+                offsets = Arrays.copyOf(offsets, capacity + 1);
+                imagePaths = Arrays.copyOf(imagePaths, capacity);
+            }
+            int offset = offsets[size];
+            if (offset + length > coords.length) {
+                coords = Arrays.copyOf(coords, Math.max(offset + length, coords.length + (coords.length >> 1)));
+            }
+            if (length > 0) System.arraycopy(stroke.coords, 0, coords, offset, length);
+            kinds[size] = stroke.kind;
+            colors[size] = stroke.color;
+            widths[size] = stroke.width;
+            imagePaths[size] = stroke.imagePath;
+            offsets[++size] = offset + length;
+        }
+
+        void removeLast() {
+            if (size > 0) imagePaths[--size] = null;
+        }
+
+        void reset() {
+            Arrays.fill(imagePaths, 0, size, null);
+            size = 0;
+            baseImagePath = null;
+        }
+
+        // Tira os 'count' comandos mais antigos, que passam a fazer parte da base
+        void dropFirst(int count) {
+            if (count <= 0) return;
+            for (int i = 0; i < count; i++) {
+                if (kinds[i] == Stroke.CLEAR) baseImagePath = null;
+                else if (kinds[i] == Stroke.IMAGE) baseImagePath = imagePaths[i];
+            }
+            int shift = offsets[count];
+            System.arraycopy(kinds, count, kinds, 0, size - count);
+            System.arraycopy(colors, count, colors, 0, size - count);
+            System.arraycopy(widths, count, widths, 0, size - count);
+            System.arraycopy(imagePaths, count, imagePaths, 0, size - count);
+            System.arraycopy(coords, shift, coords, 0, offsets[size] - shift);
+            for (int i = 0; i <= size - count; i++) offsets[i] = offsets[i + count] - shift;
+            Arrays.fill(imagePaths, size - count, size, null);
+            size -= count;
+        }
+
+        // Primeiro comando depois do último clear
+        int firstVisible() {
+            for (int i = size - 1; i >= 0; i--) {
+                if (kinds[i] == Stroke.CLEAR) return i + 1;
+            }
+            return 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int kind(int i) {
+            return kinds[i];
+        }
+
+        int color(int i) {
+            return colors[i];
+        }
+
+        float width(int i) {
+            return widths[i];
+        }
+
+        String imagePath(int i) {
+            return imagePaths[i];
+        }
+
+        // Imagem do último AddBackgroundImage ainda visível, ou null
+        String lastImagePath() {
+            int first = firstVisible();
+            for (int i = size - 1; i >= first; i--) {
+                if (kinds[i] == Stroke.IMAGE) return imagePaths[i];
+            }
+            return first == 0 ? baseImagePath : null;
+        }
+
+        int offset(int i) {
+            return offsets[i];
+        }
+
+        int length(int i) {
+            return offsets[i + 1] - offsets[i];
+        }
+
+        float[] coords() {
+            return coords;
+        }
+    }
+
+    /*
+     * Counters for the instrumented blocks. Latencies go to a LatencyHistogram
+     * (power-of-two nanosecond buckets, a few atomic adds with no locks or
+     * allocation); percentiles are reported as the bucket upper bound. Every
+     * entry point returns right away while disabled.
+     */
+    static class Metrics {
+        static final int OP_REDRAW = 0;
+        static final int OP_DRAW_LINE = 1;
+        static final int OP_CALCULATE_AREA = 2;
+        static final int OP_GRAYSCALE = 3;
+        static final int OP_BACKGROUND_IMAGE = 4;
+        static final int OP_CANVAS_SIZE = 5;
+        private static final String[] NAMES = {
+                "RedrawCanvas", "DrawLine", "CalculateArea", "ConvertToGrayscale", "AddBackgroundImage", "SetCanvasSize"};
+
+        volatile boolean enabled = false;
+
+        private final LatencyHistogram latencies = new LatencyHistogram(NAMES.length);
+        private final AtomicLong bitmapsAllocated = new AtomicLong();
+        private final AtomicLong bitmapBytesAllocated = new AtomicLong();
+
+        // Janela para redesenhos por segundo, reiniciada a cada relatório
+        private long windowStart = System.nanoTime();
+        private long windowRedraws = 0;
+
+        long start() {
+            return enabled ? System.nanoTime() : 0L;
+        }
+
+        void record(int op, long startNanos) {
+            if (startNanos == 0L || !enabled) return;
+            latencies.record(op, System.nanoTime() - startNanos);
+        }
+
+        void bitmapAllocated(Bitmap bitmap) {
+            if (!enabled || bitmap == null) return;
+            bitmapsAllocated.incrementAndGet();
+            bitmapBytesAllocated.addAndGet(bitmap.getByteCount());
+        }
+
+        void reset() {
+            latencies.reset();
+            bitmapsAllocated.set(0);
+            bitmapBytesAllocated.set(0);
+            windowStart = System.nanoTime();
+            windowRedraws = 0;
+        }
+
+        YailDictionary report() {
+            YailDictionary report = new YailDictionary();
+            report.put("enabled", enabled);
+            for (int op = 0; op < NAMES.length; op++) {
+                YailDictionary stats = new YailDictionary();
+                stats.put("count", latencies.count(op));
+                stats.put("meanMs", latencies.meanMillis(op));
+                stats.put("p50Ms", latencies.percentileMillis(op, 0.50));
+                stats.put("p95Ms", latencies.percentileMillis(op, 0.95));
+                stats.put("p99Ms", latencies.percentileMillis(op, 0.99));
+                stats.put("maxMs", latencies.maxMillis(op));
+                report.put(NAMES[op], stats);
+            }
+            report.put("bitmapsAllocated", bitmapsAllocated.get());
+            report.put("bitmapBytesAllocated", bitmapBytesAllocated.get());
+
+            long now = System.nanoTime();
+            long redraws = latencies.count(OP_REDRAW);
+            double seconds = (now - windowStart) / 1e9;
+            report.put("redrawsPerSecond", seconds > 0 ? (redraws - windowRedraws) / seconds : 0.0);
+            windowStart = now;
+            windowRedraws = redraws;
+            return report;
+        }
+    }
+
+    /*
+     * Classifies every surface pixel against a target color. Tile rows are split
+     * across the pool and each tile is read in bands of BAND_ROWS rows with bulk
+     * getPixels; spilled tiles are decoded by the worker and never re-enter the
+     * LRU. With a mask, matches are kept in a RasterMask, which floodFill then
+     * walks with a scanline fill. With a grayscale mode, pixels and color are
+     * compared by gray level (Grayscale) instead of per channel.
+     * Must run while the surface is not being drawn on.
+     */
+    static class RasterScan {
+        private static final int BAND_ROWS = 32;
+
+        final int width, height;
+        final RasterMask mask;
+
+        private final int columns, rows;
+        private final Bitmap[] tiles;
+        private final File[] spilled;
+        private final int color, tolerance;
+        private final String grayscaleMode;
+        private final int empty; // valor comparado nos tiles nunca desenhados
+
+        RasterScan(TiledSurface surface, int color, int tolerance, boolean keepMask) {
+            this(surface, color, tolerance, keepMask, null);
+        }
+
+        RasterScan(TiledSurface surface, int color, int tolerance, boolean keepMask, String grayscaleMode) {
+            this.width = surface.getWidth();
+            this.height = surface.getHeight();
+            this.columns = surface.getColumns();
+            this.rows = surface.getRows();
+            this.mask = keepMask ? new RasterMask(width, height) : null;
+            this.tiles = new Bitmap[columns * rows];
+            this.spilled = new File[columns * rows];
+            this.tolerance = Math.max(0, Math.min(255, tolerance));
+            this.grayscaleMode = grayscaleMode;
+            int[] reference = {color, Color.TRANSPARENT};
+            if (grayscaleMode != null) Grayscale.convert(reference, 0, 2, grayscaleMode);
+            this.color = reference[0];
+            this.empty = reference[1];
+            surface.snapshotTiles(tiles, spilled);
+        }
+
+        long count(ForkJoinPool pool) {
+            return pool.invoke(new BandTask(0, rows));
+        }
+
+        long floodFill(int seedX, int seedY) {
+            return mask.floodFill(seedX, seedY);
+        }
+
+        private long scanTile(int tx, int ty, int[] pixels) {
+            int x0 = tx * TiledSurface.TILE_SIZE, y0 = ty * TiledSurface.TILE_SIZE;
+            int w = Math.min(TiledSurface.TILE_SIZE, width - x0);
+            int h = Math.min(TiledSurface.TILE_SIZE, height - y0);
+            int index = ty * columns + tx;
+
+            Bitmap tile = tiles[index];
+            boolean decoded = false;
+            if (tile == null && spilled[index] != null) {
+                tile = BitmapFactory.decodeFile(spilled[index].getAbsolutePath());
+                decoded = tile != null;
+            }
+
+            if (tile == null) {
+                // Tile nunca desenhado: todo transparente
+                if (!RasterMask.matches(empty, color, tolerance)) return 0;
+                if (mask != null) {
+                    for (int y = y0; y < y0 + h; y++) mask.setRun(y, x0, w);
+                }
+                return (long) w * h;
+            }
+
+            long count = 0;
+            for (int band = 0; band < h; band += BAND_ROWS) {
+                int bandRows = Math.min(BAND_ROWS, h - band);
+                tile.getPixels(pixels, 0, w, 0, band, w, bandRows);
+                if (mask == null) {
+                    if (grayscaleMode != null) Grayscale.convert(pixels, 0, w * bandRows, grayscaleMode);
+                    count += RasterMask.countMatches(pixels, 0, w * bandRows, color, tolerance);
+                    continue;
+                }
+                // TILE_SIZE é múltiplo de 64, então cada palavra da máscara pertence a um único tile
+                count += mask.scanBand(pixels, x0, y0 + band, w, bandRows, color, tolerance, grayscaleMode);
+            }
+            if (decoded) tile.recycle();
+            return count;
+        }
+
+        private class BandTask extends RecursiveTask<Long> {
+            private final int top, bottom;
+
+            BandTask(int top, int bottom) {
+                this.top = top;
+                this.bottom = bottom;
+            }
+
+            @Override
+            protected Long compute() {
+                if (bottom <= top) return 0L;
+                if (bottom - top > 1) {
+                    int middle = (top + bottom) >>> 1;
+                    BandTask upper = new BandTask(top, middle);
+                    upper.fork();
+                    long lower = new BandTask(middle, bottom).compute();
+                    return upper.join() + lower;
+                }
+                int[] pixels = new int[TiledSurface.TILE_SIZE * BAND_ROWS];
+                long count = 0;
+                for (int tx = 0; tx < columns; tx++) count += scanTile(tx, top, pixels);
+                return count;
+            }
+        }
+    }
+
+    /*
+     * Background drawable that always shows the current front buffer, so swapping
+     * buffers only changes a reference instead of creating a new BitmapDrawable.
+     */
+    static class FrontBufferDrawable extends Drawable {
+        private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        private Bitmap bitmap;
+
+        void setBitmap(Bitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+
+        @Override
+        public void draw(android.graphics.Canvas canvas) {
+            if (bitmap != null && !bitmap.isRecycled()) {
+                canvas.drawBitmap(bitmap, null, getBounds(), paint);
+            }
+        }
+
+        @Override
+        public void setAlpha(int alpha) {
+            paint.setAlpha(alpha);
+        }
+
+        @Override
+        public void setColorFilter(ColorFilter colorFilter) {
+            paint.setColorFilter(colorFilter);
+        }
+
+        @Override
+        public int getOpacity() {
+            return PixelFormat.TRANSLUCENT;
+        }
+    }
+
     public class Point {
         private double x;
         private double y;
@@ -527,29 +3573,11 @@ public class CalculateCanvasArea extends AndroidNonvisibleComponent {
     }
             
     public void AddAreaPoint(double x, double y) {
-        areaPoints.add(new double[]{x, y});
-    }
-    
-    private void sortPointsForAreaCalculation() {
-        if (areaPoints.size() < 3) return; // Precisa de pelo menos 3 pontos para formar um polígono
-
-        // Encontrar o ponto mais baixo (ou o mais à esquerda em caso de empate)
-        double[] lowestPoint = areaPoints.get(0);
-        for (double[] point : areaPoints) {
-            if (point[1] < lowestPoint[1] || (point[1] == lowestPoint[1] && point[0] < lowestPoint[0])) {
-                lowestPoint = point;
-            }
+        if (simplifyTolerance > 0f) {
+            simplifier.add(areaPoints, x, y);
+        } else {
+            areaPoints.add(x, y);
         }
-
-        // Ordenar os pontos com base no ângulo em relação ao ponto mais baixo
-        final double[] finalLowestPoint = lowestPoint;
-        Collections.sort(areaPoints, new Comparator<double[]>() {
-            @Override
-            public int compare(double[] p1, double[] p2) {
-                double angle1 = Math.atan2(p1[1] - finalLowestPoint[1], p1[0] - finalLowestPoint[0]);
-                double angle2 = Math.atan2(p2[1] - finalLowestPoint[1], p2[0] - finalLowestPoint[0]);
-                return Double.compare(angle1, angle2);
-            }
-        });
+        onAreaPointsChanged();
     }
 }
\ No newline at end of file
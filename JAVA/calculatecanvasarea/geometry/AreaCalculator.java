@@ -0,0 +1,47 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+/*
+ * Plain-Java measurement helpers shared by the extension. Nothing here
+ * depends on Android, so it can be compiled and benchmarked on the JVM.
+ */
+public final class AreaCalculator {
+    private AreaCalculator() {
+    }
+
+    public static double calculateArea(PointBuffer points) {
+        double area = 0.0;
+        int n = points.size();
+        if (n < 3) return 0.0; // Um polígono válido precisa de ao menos 3 pontos
+
+        for (int i = 0; i < n; i++) {
+            int next = (i + 1) % n; // Para garantir que o último ponto se conecte ao primeiro
+            area += points.getX(i) * points.getY(next) - points.getX(next) * points.getY(i);
+        }
+        return Math.abs(area / 2.0);
+    }
+
+    // Perimeter of the closed outline, walking all edges (batch version of PointBuffer.closedPerimeter()).
+    public static double calculatePerimeter(PointBuffer points) {
+        double perimeter = 0.0;
+        int n = points.size();
+        for (int i = 0; i < n; i++) {
+            int next = (i + 1) % n;
+            perimeter += distance(points.getX(i), points.getY(i), points.getX(next), points.getY(next));
+        }
+        return perimeter;
+    }
+
+    // Metres per pixel of a reference line of known length.
+    public static double calculateScale(double[] start, double[] end, double lengthMeters) {
+        if (start == null || end == null) {
+            return 0;
+        }
+        double distanceInDegrees = distance(start[0], start[1], end[0], end[1]);
+        return distanceInDegrees == 0 ? 0 : lengthMeters / distanceInDegrees;
+    }
+
+    public static double distance(double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1, dy = y2 - y1;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
@@ -0,0 +1,183 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+/*
+ * Pixel-to-metre transform, built once when the reference lines or the
+ * perspective points change and then applied to whole vertex arrays.
+ * The red line defines the metric X axis and the blue line the Y axis, so
+ * rotated or skewed reference lines give a general affine map; an optional
+ * four-point homography replaces it for photographed plans. Under an affine
+ * map area is the pixel area times |det|, O(1); otherwise, and for the
+ * perimeter, the buffer keeps running sums over its edges mapped to metres,
+ * updated per added or removed point and rebuilt in one pass only when the
+ * calibration changes. The four perspective point pairs are kept so a
+ * session can save them.
+ */
+public final class Calibration {
+    // X = a*x + b*y + c, Y = d*x + e*y + f
+    private double a, b, c, d, e, f;
+    private boolean affineValid;
+
+    // Homografia 3x3 com h[8] = 1: X = (h0*x + h1*y + h2) / w, Y = (h3*x + h4*y + h5) / w, w = h6*x + h7*y + 1
+    private final double[] h = new double[8];
+    private boolean perspective;
+    private double perspectiveCenterX, perspectiveCenterY;
+    private final double[] perspectivePoints = new double[16]; // 4 pontos da imagem, depois 4 do mundo
+
+    private int version;
+
+    // Returns false when the lines are parallel or empty, leaving the calibration unset.
+    public boolean setReferenceLines(double[] redStart, double[] redEnd, double redMeters,
+                                     double[] blueStart, double[] blueEnd, double blueMeters) {
+        version++;
+        double rx = redEnd[0] - redStart[0], ry = redEnd[1] - redStart[1];
+        double bx = blueEnd[0] - blueStart[0], by = blueEnd[1] - blueStart[1];
+        double det = rx * by - bx * ry;
+        if (det == 0 || Double.isNaN(det)) {
+            affineValid = false;
+            return false;
+        }
+        // Leva o vetor vermelho a (redMeters, 0) e o azul a (0, blueMeters)
+        a = redMeters * by / det;
+        b = -redMeters * bx / det;
+        d = -blueMeters * ry / det;
+        e = blueMeters * rx / det;
+        // A origem métrica fica no início da linha vermelha
+        c = -(a * redStart[0] + b * redStart[1]);
+        f = -(d * redStart[0] + e * redStart[1]);
+        affineValid = true;
+        return true;
+    }
+
+    // Maps four image points to four metric points, both packed [x0, y0, ..., x3, y3].
+    // Returns false when three of the points are collinear.
+    public boolean setPerspective(double[] image, double[] world) {
+        double[][] m = new double[8][9];
+        for (int i = 0; i < 4; i++) {
+            double x = image[i * 2], y = image[i * 2 + 1];
+            double X = world[i * 2], Y = world[i * 2 + 1];
+            double[] rowX = m[i * 2], rowY = m[i * 2 + 1];
+            rowX[0] = x; rowX[1] = y; rowX[2] = 1; rowX[6] = -X * x; rowX[7] = -X * y; rowX[8] = X;
+            rowY[3] = x; rowY[4] = y; rowY[5] = 1; rowY[6] = -Y * x; rowY[7] = -Y * y; rowY[8] = Y;
+        }
+        if (!solve(m)) return false;
+        for (int i = 0; i < 8; i++) h[i] = m[i][8];
+        System.arraycopy(image, 0, perspectivePoints, 0, 8);
+        System.arraycopy(world, 0, perspectivePoints, 8, 8);
+        perspectiveCenterX = (image[0] + image[2] + image[4] + image[6]) / 4;
+        perspectiveCenterY = (image[1] + image[3] + image[5] + image[7]) / 4;
+        perspective = true;
+        version++;
+        return true;
+    }
+
+    public void clearPerspective() {
+        if (!perspective) return;
+        perspective = false;
+        version++;
+    }
+
+    public boolean isCalibrated() {
+        return perspective || affineValid;
+    }
+
+    public boolean isPerspective() {
+        return perspective;
+    }
+
+    // The four image points followed by the four world points, or null without a perspective.
+    public double[] perspectivePoints() {
+        return perspective ? perspectivePoints.clone() : null;
+    }
+
+    public int version() {
+        return version;
+    }
+
+    public Calibration copy() {
+        Calibration copy = new Calibration();
+        copy.a = a; copy.b = b; copy.c = c; copy.d = d; copy.e = e; copy.f = f;
+        copy.affineValid = affineValid;
+        System.arraycopy(h, 0, copy.h, 0, h.length);
+        copy.perspective = perspective;
+        copy.perspectiveCenterX = perspectiveCenterX;
+        copy.perspectiveCenterY = perspectiveCenterY;
+        System.arraycopy(perspectivePoints, 0, copy.perspectivePoints, 0, perspectivePoints.length);
+        copy.version = version;
+        return copy;
+    }
+
+    // Transforms 'count' packed points in place.
+    public void transform(double[] xy, int count) {
+        int end = count << 1;
+        if (perspective) {
+            double h0 = h[0], h1 = h[1], h2 = h[2], h3 = h[3], h4 = h[4], h5 = h[5], h6 = h[6], h7 = h[7];
+            for (int i = 0; i < end; i += 2) {
+                double x = xy[i], y = xy[i + 1];
+                double w = h6 * x + h7 * y + 1;
+                xy[i] = (h0 * x + h1 * y + h2) / w;
+                xy[i + 1] = (h3 * x + h4 * y + h5) / w;
+            }
+        } else {
+            double a = this.a, b = this.b, c = this.c, d = this.d, e = this.e, f = this.f;
+            for (int i = 0; i < end; i += 2) {
+                double x = xy[i], y = xy[i + 1];
+                xy[i] = a * x + b * y + c;
+                xy[i + 1] = d * x + e * y + f;
+            }
+        }
+    }
+
+    public double distance(double x1, double y1, double x2, double y2) {
+        if (!isCalibrated()) return 0.0;
+        double[] p = {x1, y1, x2, y2};
+        transform(p, 2);
+        return AreaCalculator.distance(p[0], p[1], p[2], p[3]);
+    }
+
+    // Square metres per square pixel. Exact for the affine map; with a
+    // perspective it is the local factor at the centre of the four points.
+    public double areaScale() {
+        if (perspective) {
+            double det = h[0] * (h[4] - h[5] * h[7]) - h[1] * (h[3] - h[5] * h[6]) + h[2] * (h[3] * h[7] - h[4] * h[6]);
+            double w = h[6] * perspectiveCenterX + h[7] * perspectiveCenterY + 1;
+            return Math.abs(det / (w * w * w));
+        }
+        return affineValid ? Math.abs(a * e - b * d) : 0.0;
+    }
+
+    // Metric area of the closed outline; 0 while uncalibrated.
+    public double area(PointBuffer points) {
+        if (!isCalibrated() || points.size() < 3) return 0.0;
+        if (!perspective) return points.closedArea() * areaScale();
+        return Math.abs(points.metricSignedArea(this));
+    }
+
+    // Metric perimeter of the closed outline; 0 while uncalibrated.
+    public double perimeter(PointBuffer points) {
+        if (!isCalibrated() || points.size() < 2) return 0.0;
+        return points.metricClosedPerimeter(this);
+    }
+
+    // Eliminação de Gauss com pivotamento parcial; a solução fica na última coluna
+    private static boolean solve(double[][] m) {
+        int n = m.length;
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            for (int row = col + 1; row < n; row++) {
+                if (Math.abs(m[row][col]) > Math.abs(m[pivot][col])) pivot = row;
+            }
+            if (Math.abs(m[pivot][col]) < 1e-12) return false;
+            double[] swap = m[col];
+            m[col] = m[pivot];
+            m[pivot] = swap;
+            for (int row = 0; row < n; row++) {
+                if (row == col) continue;
+                double factor = m[row][col] / m[col][col];
+                if (factor == 0) continue;
+                for (int k = col; k <= n; k++) m[row][k] -= factor * m[col][k];
+            }
+        }
+        for (int row = 0; row < n; row++) m[row][n] /= m[row][row];
+        return true;
+    }
+}
@@ -0,0 +1,32 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+/*
+ * Running sum with Neumaier (improved Kahan) compensation. The running
+ * measurements add a term per new edge and subtract it again on undo; plain
+ * doubles would keep the rounding error of every such cycle, while the
+ * compensation bounds it by a few ulps of the terms still in the sum.
+ */
+final class CompensatedSum {
+    private double sum;
+    private double compensation;
+
+    void add(double value) {
+        double t = sum + value;
+        // Guarda o que o arredondamento de 'sum + value' perdeu
+        if (Math.abs(sum) >= Math.abs(value)) {
+            compensation += (sum - t) + value;
+        } else {
+            compensation += (value - t) + sum;
+        }
+        sum = t;
+    }
+
+    double value() {
+        return sum + compensation;
+    }
+
+    void reset() {
+        sum = 0.0;
+        compensation = 0.0;
+    }
+}
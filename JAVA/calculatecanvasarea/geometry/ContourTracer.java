@@ -0,0 +1,77 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+import java.util.Arrays;
+
+/*
+ * Outer contour of a region stored as a bit mask (one bit per pixel, rows of
+ * wordsPerRow longs, bit x & 63 of word x >>> 6), traced with marching squares
+ * over the pixel corners. The walk starts at the top-left pixel of the region
+ * and only emits corners where the direction changes, so straight runs cost a
+ * single vertex and the enclosed area equals the region's pixel count plus any
+ * holes. Diagonal-only contacts are treated as separate, matching a 4-connected
+ * flood fill.
+ */
+public final class ContourTracer {
+    private static final int UP = 0, RIGHT = 1, DOWN = 2, LEFT = 3;
+
+    private ContourTracer() {
+    }
+
+    // Returns the contour as packed [x0, y0, x1, y1, ...] corner coordinates, or an empty array for an empty mask.
+    public static double[] trace(long[] mask, int width, int height, int wordsPerRow) {
+        int startX = -1, startY = -1;
+        for (int y = 0; y < height && startX < 0; y++) {
+            for (int w = 0; w < wordsPerRow; w++) {
+                long word = mask[y * wordsPerRow + w];
+                if (word != 0) {
+                    startX = (w << 6) + Long.numberOfTrailingZeros(word);
+                    startY = y;
+                    break;
+                }
+            }
+        }
+        if (startX < 0) return new double[0];
+
+        double[] out = new double[64];
+        int count = 0;
+        int x = startX, y = startY;
+        int previous = -1;
+        do {
+            // Cantos da célula cujo vértice inferior direito é o pixel (x, y)
+            int state = (filled(mask, width, height, wordsPerRow, x - 1, y - 1) ? 1 : 0)
+                    | (filled(mask, width, height, wordsPerRow, x, y - 1) ? 2 : 0)
+                    | (filled(mask, width, height, wordsPerRow, x - 1, y) ? 4 : 0)
+                    | (filled(mask, width, height, wordsPerRow, x, y) ? 8 : 0);
+            int next;
+            switch (state) {
+                case 1: case 5: case 13: next = UP; break;
+                case 2: case 3: case 7: next = RIGHT; break;
+                case 4: case 12: case 14: next = LEFT; break;
+                case 8: case 10: case 11: next = DOWN; break;
+                // Selas: mantém as regiões diagonais separadas
+                case 6: next = previous == DOWN ? RIGHT : LEFT; break;
+                case 9: next = previous == RIGHT ? UP : DOWN; break;
+                default: return new double[0]; // não deveria acontecer na borda de uma região
+            }
+            if (next != previous) {
+                if (count + 2 > out.length) out = Arrays.copyOf(out, out.length * 2);
+                out[count++] = x;
+                out[count++] = y;
+            }
+            previous = next;
+            switch (next) {
+                case UP: y--; break;
+                case RIGHT: x++; break;
+                case DOWN: y++; break;
+                default: x--; break;
+            }
+        } while (x != startX || y != startY);
+
+        return Arrays.copyOf(out, count);
+    }
+
+    private static boolean filled(long[] mask, int width, int height, int wordsPerRow, int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) return false;
+        return (mask[y * wordsPerRow + (x >>> 6)] & (1L << (x & 63))) != 0;
+    }
+}
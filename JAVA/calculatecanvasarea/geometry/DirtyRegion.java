@@ -0,0 +1,130 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+/*
+ * Dirty-rectangle bookkeeping for a double-buffered display, in canvas
+ * pixels. The back buffer is one frame behind the front one, so a frame
+ * recomposes the union of its own damage and the previous frame's, clipped
+ * to the canvas. When the temporary reference line moves it damages both the
+ * position it was last composed at and its new one. Only int fields: tracking damage and
+ * starting or finishing a frame never allocates.
+ */
+public final class DirtyRegion {
+    // Retângulos [left, right) x [top, bottom); vazio quando left >= right ou top >= bottom
+    private int left, top, right, bottom;
+    private int previousLeft, previousTop, previousRight, previousBottom;
+    private int lineLeft, lineTop, lineRight, lineBottom;
+    private int composeLeft, composeTop, composeRight, composeBottom;
+
+    // Union with [l, r) x [t, b); empty rectangles are ignored.
+    public void add(int l, int t, int r, int b) {
+        if (l >= r || t >= b) return;
+        if (left >= right || top >= bottom) {
+            left = l;
+            top = t;
+            right = r;
+            bottom = b;
+            return;
+        }
+        if (l < left) left = l;
+        if (t < top) top = t;
+        if (r > right) right = r;
+        if (b > bottom) bottom = b;
+    }
+
+    // Bounding box of a segment inflated by half the stroke width (+1 px of antialiasing).
+    public void addSegment(double x0, double y0, double x1, double y1, float strokeWidth) {
+        int pad = (int) Math.ceil(strokeWidth / 2f) + 1;
+        add((int) Math.floor(Math.min(x0, x1)) - pad, (int) Math.floor(Math.min(y0, y1)) - pad,
+            (int) Math.ceil(Math.max(x0, x1)) + pad, (int) Math.ceil(Math.max(y0, y1)) + pad);
+    }
+
+    public void markAll(int width, int height) {
+        left = 0;
+        top = 0;
+        right = width;
+        bottom = height;
+    }
+
+    // Both buffers are stale (new buffers or a new display scale): recompose everything twice.
+    public void invalidateBuffers(int width, int height) {
+        markAll(width, height);
+        previousLeft = 0;
+        previousTop = 0;
+        previousRight = width;
+        previousBottom = height;
+    }
+
+    // Moves the temporary line: its old and new bounds are both damaged, unless it did not move.
+    public void moveLine(double x0, double y0, double x1, double y1, float strokeWidth) {
+        int pad = (int) Math.ceil(strokeWidth / 2f) + 1;
+        int l = (int) Math.floor(Math.min(x0, x1)) - pad, t = (int) Math.floor(Math.min(y0, y1)) - pad;
+        int r = (int) Math.ceil(Math.max(x0, x1)) + pad, b = (int) Math.ceil(Math.max(y0, y1)) + pad;
+        if (l == lineLeft && t == lineTop && r == lineRight && b == lineBottom) return;
+        add(lineLeft, lineTop, lineRight, lineBottom);
+        lineLeft = l;
+        lineTop = t;
+        lineRight = r;
+        lineBottom = b;
+        add(l, t, r, b);
+    }
+
+    // Computes the region to recompose into the back buffer. Returns false, and
+    // drops this frame's (empty or off-canvas) damage, when nothing needs drawing.
+    public boolean beginFrame(int width, int height) {
+        int l = left, t = top, r = right, b = bottom;
+        if (l >= r || t >= b) {
+            l = previousLeft;
+            t = previousTop;
+            r = previousRight;
+            b = previousBottom;
+        } else if (previousLeft < previousRight && previousTop < previousBottom) {
+            l = Math.min(l, previousLeft);
+            t = Math.min(t, previousTop);
+            r = Math.max(r, previousRight);
+            b = Math.max(b, previousBottom);
+        }
+        l = Math.max(l, 0);
+        t = Math.max(t, 0);
+        r = Math.min(r, width);
+        b = Math.min(b, height);
+        if (l >= r || t >= b) {
+            // Nada mudou; o back continua atrasado na região anterior
+            clearCurrent();
+            return false;
+        }
+        composeLeft = l;
+        composeTop = t;
+        composeRight = r;
+        composeBottom = b;
+        return true;
+    }
+
+    // After the buffers are swapped: this frame's damage is what the new back buffer misses.
+    public void endFrame() {
+        previousLeft = left;
+        previousTop = top;
+        previousRight = right;
+        previousBottom = bottom;
+        clearCurrent();
+    }
+
+    public int composeLeft() {
+        return composeLeft;
+    }
+
+    public int composeTop() {
+        return composeTop;
+    }
+
+    public int composeRight() {
+        return composeRight;
+    }
+
+    public int composeBottom() {
+        return composeBottom;
+    }
+
+    private void clearCurrent() {
+        left = top = right = bottom = 0;
+    }
+}
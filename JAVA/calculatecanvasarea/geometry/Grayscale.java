@@ -0,0 +1,34 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+/*
+ * Gray level of packed ARGB pixels, converted in place. The luminance modes
+ * use Rec.601 / Rec.709 weights in 8-bit fixed point; the result is opaque.
+ */
+public final class Grayscale {
+    public static final String AVERAGE = "Average";
+    public static final String REC601 = "Rec601";
+    public static final String REC709 = "Rec709";
+
+    private Grayscale() {
+    }
+
+    // Converts pixels[from, to) using 'mode' (AVERAGE for anything else).
+    public static void convert(int[] pixels, int from, int to, String mode) {
+        // Pesos em ponto fixo (soma 256) para os modos de luminância
+        int wr, wg, wb;
+        if (REC601.equals(mode)) {
+            wr = 77; wg = 150; wb = 29;
+        } else if (REC709.equals(mode)) {
+            wr = 54; wg = 183; wb = 19;
+        } else {
+            wr = 0; wg = 0; wb = 0;
+        }
+
+        for (int i = from; i < to; i++) {
+            int pixel = pixels[i];
+            int r = (pixel >> 16) & 0xFF, g = (pixel >> 8) & 0xFF, b = pixel & 0xFF;
+            int gray = wr == 0 ? (r + g + b) / 3 : (wr * r + wg * g + wb * b) >> 8;
+            pixels[i] = 0xFF000000 | (gray << 16) | (gray << 8) | gray;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Lock-free latency histogram for a fixed set of operations. Bucket b holds
+ * the durations in [2^b, 2^(b+1)) nanoseconds, so recording is a few atomic
+ * adds with no allocation, from any thread. A percentile is the upper bound
+ * of the bucket holding its rank, capped at the largest duration observed.
+ */
+public final class LatencyHistogram {
+    static final int BUCKETS = 64;
+
+    private final int operations;
+    private final AtomicLongArray buckets;
+    private final AtomicLongArray counts;
+    private final AtomicLongArray totalNanos;
+    private final AtomicLongArray maxNanos;
+
+    public LatencyHistogram(int operations) {
+        this.operations = operations;
+        this.buckets = new AtomicLongArray(operations * BUCKETS);
+        this.counts = new AtomicLongArray(operations);
+        this.totalNanos = new AtomicLongArray(operations);
+        this.maxNanos = new AtomicLongArray(operations);
+    }
+
+    public void record(int op, long elapsedNanos) {
+        long elapsed = Math.max(1L, elapsedNanos);
+        buckets.incrementAndGet(op * BUCKETS + bucket(elapsed));
+        counts.incrementAndGet(op);
+        totalNanos.addAndGet(op, elapsed);
+        long max;
+        while ((max = maxNanos.get(op)) < elapsed && !maxNanos.compareAndSet(op, max, elapsed)) {
+            // outra thread atualizou o máximo; tenta de novo
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) buckets.set(i, 0);
+        for (int op = 0; op < operations; op++) {
+            counts.set(op, 0);
+            totalNanos.set(op, 0);
+            maxNanos.set(op, 0);
+        }
+    }
+
+    public long count(int op) {
+        return counts.get(op);
+    }
+
+    public double meanMillis(int op) {
+        long count = counts.get(op);
+        return count == 0 ? 0.0 : totalNanos.get(op) / (count * 1e6);
+    }
+
+    public double maxMillis(int op) {
+        return maxNanos.get(op) / 1e6;
+    }
+
+    // Limite superior do bucket que contém o percentil, sem passar do máximo observado
+    public double percentileMillis(int op, double fraction) {
+        long count = counts.get(op);
+        if (count == 0) return 0.0;
+        long rank = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += buckets.get(op * BUCKETS + b);
+            if (seen >= rank) return Math.min(upperBound(b), maxNanos.get(op)) / 1e6;
+        }
+        return maxNanos.get(op) / 1e6;
+    }
+
+    static int bucket(long nanos) {
+        return 63 - Long.numberOfLeadingZeros(nanos);
+    }
+
+    static long upperBound(int bucket) {
+        return bucket >= 62 ? Long.MAX_VALUE : (2L << bucket) - 1;
+    }
+}
@@ -0,0 +1,156 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+/*
+ * Reordered copy of a PointBuffer for area calculation, cached until the
+ * source's modCount or the mode changes. Sorted starts at the lowest point
+ * and orders the rest by angle around it, nearer first on the same ray and
+ * farther first on the last one, so any point set seen from the lowest
+ * point becomes a simple polygon. ConvexHull is Andrew's monotone chain.
+ * Both compare with cross products only (no trig) and use a stable merge
+ * sort on int indices.
+ */
+public class OrderedView {
+    public static final String AS_DRAWN = "AsDrawn";
+    public static final String SORTED = "Sorted";
+    public static final String CONVEX_HULL = "ConvexHull";
+
+    private final PointBuffer view = new PointBuffer();
+    private PointBuffer source;
+    private int builtFor;
+    private String builtMode;
+
+    private int[] order = new int[0], scratch = new int[0];
+    private double[] keyX = new double[0], keyY = new double[0];
+
+    public PointBuffer of(PointBuffer points, String mode) {
+        if (AS_DRAWN.equals(mode)) return points;
+        if (points == source && points.modCount() == builtFor && mode.equals(builtMode)) return view;
+
+        int n = points.size();
+        ensureCapacity(n);
+        view.clear();
+        if (CONVEX_HULL.equals(mode)) {
+            buildHull(points, n);
+        } else {
+            buildSorted(points, n);
+        }
+        source = points;
+        builtFor = points.modCount();
+        builtMode = mode;
+        return view;
+    }
+
+    private void buildSorted(PointBuffer points, int n) {
+        if (n == 0) return;
+
+        // Encontrar o ponto mais baixo (ou o mais à esquerda em caso de empate)
+        int lowest = 0;
+        for (int i = 1; i < n; i++) {
+            double x = points.getX(i), y = points.getY(i);
+            if (y < points.getY(lowest) || (y == points.getY(lowest) && x < points.getX(lowest))) {
+                lowest = i;
+            }
+        }
+
+        // Vetores relativos ao ponto mais baixo; todos ficam no semiplano de ângulo [0, pi).
+        // O próprio ponto fica fora da ordenação: ele abre o polígono
+        double lowestX = points.getX(lowest), lowestY = points.getY(lowest);
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            keyX[i] = points.getX(i) - lowestX;
+            keyY[i] = points.getY(i) - lowestY;
+            if (i != lowest) order[m++] = i;
+        }
+        sort(m, true);
+
+        // No último raio os pontos voltam do mais distante para o mais próximo
+        int last = m;
+        while (last > 0 && cross(order[m - 1], order[last - 1]) == 0) last--;
+        if (last > 0) reverse(last, m);
+
+        view.add(lowestX, lowestY);
+        for (int i = 0; i < m; i++) view.add(points.getX(order[i]), points.getY(order[i]));
+    }
+
+    // Produto vetorial dos vetores relativos ao ponto mais baixo
+    private double cross(int a, int b) {
+        return keyX[a] * keyY[b] - keyY[a] * keyX[b];
+    }
+
+    private void reverse(int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+    }
+
+    private void buildHull(PointBuffer points, int n) {
+        for (int i = 0; i < n; i++) {
+            keyX[i] = points.getX(i);
+            keyY[i] = points.getY(i);
+            order[i] = i;
+        }
+        sort(n, false);
+        if (n < 3) {
+            for (int i = 0; i < n; i++) view.add(keyX[order[i]], keyY[order[i]]);
+            return;
+        }
+
+        // Cadeia inferior e depois superior, no sentido anti-horário
+        int[] hull = scratch;
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            while (k >= 2 && cross(hull[k - 2], hull[k - 1], order[i]) <= 0) k--;
+            hull[k++] = order[i];
+        }
+        for (int i = n - 2, lower = k + 1; i >= 0; i--) {
+            while (k >= lower && cross(hull[k - 2], hull[k - 1], order[i]) <= 0) k--;
+            hull[k++] = order[i];
+        }
+        for (int i = 0; i < k - 1; i++) view.add(keyX[hull[i]], keyY[hull[i]]);
+    }
+
+    private double cross(int o, int a, int b) {
+        return (keyX[a] - keyX[o]) * (keyY[b] - keyY[o]) - (keyY[a] - keyY[o]) * (keyX[b] - keyX[o]);
+    }
+
+    private int compare(int a, int b, boolean byAngle) {
+        if (byAngle) {
+            double c = cross(a, b);
+            if (c != 0) return c > 0 ? -1 : 1;
+            // Mesmo raio: o mais próximo primeiro
+            return Double.compare(Math.abs(keyX[a]) + keyY[a], Math.abs(keyX[b]) + keyY[b]);
+        }
+        int c = Double.compare(keyX[a], keyX[b]);
+        return c != 0 ? c : Double.compare(keyY[a], keyY[b]);
+    }
+
+    // Merge sort estável de baixo para cima sobre order[0, n)
+    private void sort(int n, boolean byAngle) {
+        int[] src = order, dst = scratch;
+        for (int width = 1; width < n; width <<= 1) {
+            for (int lo = 0; lo < n; lo += width << 1) {
+                int mid = Math.min(lo + width, n), hi = Math.min(lo + (width << 1), n);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) dst[k++] = compare(src[j], src[i], byAngle) < 0 ? src[j++] : src[i++];
+                while (i < mid) dst[k++] = src[i++];
+                while (j < hi) dst[k++] = src[j++];
+            }
+            int[] swap = src;
+            src = dst;
+            dst = swap;
+        }
+        order = src;
+        scratch = dst;
+    }
+
+    private void ensureCapacity(int n) {
+        if (keyX.length >= n) return;
+        // 'order' e 'scratch' trocam de papel no sort; o casco usa 'scratch' como pilha de até 2n
+        order = new int[2 * n];
+        scratch = new int[2 * n];
+        keyX = new double[n];
+        keyY = new double[n];
+    }
+}
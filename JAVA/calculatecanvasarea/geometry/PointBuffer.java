@@ -0,0 +1,279 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+import java.nio.DoubleBuffer;
+
+/*
+ * Vertex store with x/y packed side by side in a single double[], so tracing
+ * does not allocate one array per point. Grows by 1.5x, undo is O(1).
+ * The open shoelace sum and path length are kept up to date on add/undo so
+ * closedArea() and closedPerimeter() only add the closing edge; both are
+ * compensated sums, so repeated add/undo cycles do not accumulate drift.
+ * The same two sums over the points mapped by a Calibration are kept for
+ * the last calibration measured, and rebuilt only when it changes.
+ */
+public class PointBuffer {
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private double[] coords;
+    private int size;
+
+    // Somas do caminho aberto (p0 -> p1 -> ... -> pn-1)
+    private final CompensatedSum openShoelace = new CompensatedSum();
+    private final CompensatedSum openLength = new CompensatedSum();
+    private boolean sumsValid = true;
+
+    // As mesmas somas com os pontos em metros; valem enquanto metricFor não muda de versão
+    private final CompensatedSum metricShoelace = new CompensatedSum();
+    private final CompensatedSum metricLength = new CompensatedSum();
+    private Calibration metricFor;
+    private int metricVersion;
+    private double[] metricEdge;
+
+    // Incrementado a cada alteração, para invalidar estruturas derivadas
+    private int modCount;
+
+    public PointBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PointBuffer(int initialCapacity) {
+        coords = new double[Math.max(1, initialCapacity) * 2];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int modCount() {
+        return modCount;
+    }
+
+    public double getX(int index) {
+        return coords[index << 1];
+    }
+
+    public double getY(int index) {
+        return coords[(index << 1) + 1];
+    }
+
+    public void set(int index, double x, double y) {
+        coords[index << 1] = x;
+        coords[(index << 1) + 1] = y;
+        sumsValid = false;
+        metricFor = null;
+        modCount++;
+    }
+
+    public void add(double x, double y) {
+        ensureCapacity(size + 1);
+        coords[size << 1] = x;
+        coords[(size << 1) + 1] = y;
+        size++;
+        modCount++;
+        edgesAdded(size - 1);
+    }
+
+    // Appends 'count' points from a packed [x0, y0, x1, y1, ...] array.
+    public void addAll(double[] xy, int count) {
+        ensureCapacity(size + count);
+        System.arraycopy(xy, 0, coords, size << 1, count << 1);
+        int first = size;
+        size += count;
+        modCount++;
+        edgesAdded(first);
+    }
+
+    // Appends 'count' points read from a packed x/y buffer, advancing its position.
+    public void addAll(DoubleBuffer xy, int count) {
+        ensureCapacity(size + count);
+        xy.get(coords, size << 1, count << 1);
+        int first = size;
+        size += count;
+        modCount++;
+        edgesAdded(first);
+    }
+
+    // Writes the points as packed x/y pairs, advancing the buffer's position.
+    public void writeTo(DoubleBuffer xy) {
+        xy.put(coords, 0, size << 1);
+    }
+
+    public void removeLast() {
+        if (size == 0) return;
+        if (sumsValid && size > 1) {
+            int i = size - 2;
+            openShoelace.add(-cross(i, i + 1));
+            openLength.add(-distance(i, i + 1));
+        }
+        if (metricFor != null && size > 1) addMetricEdge(size - 2, -1.0);
+        size--;
+        modCount++;
+        if (size <= 1) {
+            // caminho sem arestas: zero exato
+            resetSums();
+            metricShoelace.reset();
+            metricLength.reset();
+        }
+    }
+
+    // Drops every point from 'newSize' on, keeping the running sums.
+    public void truncate(int newSize) {
+        while (size > Math.max(0, newSize)) removeLast();
+    }
+
+    public void clear() {
+        size = 0;
+        modCount++;
+        resetSums();
+        metricShoelace.reset();
+        metricLength.reset();
+    }
+
+    // Shoelace area of the polygon closed from the last point back to the first.
+    public double closedArea() {
+        return Math.abs(signedArea());
+    }
+
+    // Positive when the closed outline runs counter-clockwise in y-up coordinates.
+    public double signedArea() {
+        if (size < 3) return 0.0;
+        ensureSums();
+        return (openShoelace.value() + cross(size - 1, 0)) / 2.0;
+    }
+
+    public double openShoelace() {
+        ensureSums();
+        return openShoelace.value();
+    }
+
+    // Length of the path plus the closing edge, as GetAreaPerimeter has always measured it.
+    public double closedPerimeter() {
+        if (size < 2) return 0.0;
+        ensureSums();
+        return openLength.value() + distance(size - 1, 0);
+    }
+
+    // Signed area of the closed outline with every point mapped by 'calibration'.
+    double metricSignedArea(Calibration calibration) {
+        if (size < 3) return 0.0;
+        ensureMetric(calibration);
+        closingMetricEdge(calibration);
+        double[] e = metricEdge;
+        return (metricShoelace.value() + e[0] * e[3] - e[2] * e[1]) / 2.0;
+    }
+
+    // Perimeter of the closed outline with every point mapped by 'calibration'.
+    double metricClosedPerimeter(Calibration calibration) {
+        if (size < 2) return 0.0;
+        ensureMetric(calibration);
+        closingMetricEdge(calibration);
+        double[] e = metricEdge;
+        double dx = e[2] - e[0], dy = e[3] - e[1];
+        return metricLength.value() + Math.sqrt(dx * dx + dy * dy);
+    }
+
+    // Returns a packed copy of the points, [x0, y0, x1, y1, ...].
+    public double[] toArray() {
+        double[] copy = new double[size << 1];
+        System.arraycopy(coords, 0, copy, 0, size << 1);
+        return copy;
+    }
+
+    // Copies the points as packed x/y pairs into the start of 'xy'.
+    public void copyTo(double[] xy) {
+        System.arraycopy(coords, 0, xy, 0, size << 1);
+    }
+
+    // Packed copy of the points in [from, to).
+    public double[] toArray(int from, int to) {
+        double[] copy = new double[(to - from) << 1];
+        System.arraycopy(coords, from << 1, copy, 0, copy.length);
+        return copy;
+    }
+
+    // Bytes held by the backing array.
+    public long footprintBytes() {
+        return coords.length * 8L;
+    }
+
+    private void addEdge(int i) {
+        openShoelace.add(cross(i, i + 1));
+        openLength.add(distance(i, i + 1));
+    }
+
+    // Soma as arestas que terminam nos pontos a partir de 'first'
+    private void edgesAdded(int first) {
+        for (int i = Math.max(0, first - 1); i < size - 1; i++) {
+            if (sumsValid) addEdge(i);
+            if (metricFor != null) addMetricEdge(i, 1.0);
+        }
+    }
+
+    // Aresta i -> i + 1 em metros, somada (sign = 1) ou retirada (sign = -1)
+    private void addMetricEdge(int i, double sign) {
+        double[] e = metricEdge;
+        e[0] = getX(i);
+        e[1] = getY(i);
+        e[2] = getX(i + 1);
+        e[3] = getY(i + 1);
+        metricFor.transform(e, 2);
+        double dx = e[2] - e[0], dy = e[3] - e[1];
+        metricShoelace.add(sign * (e[0] * e[3] - e[2] * e[1]));
+        metricLength.add(sign * Math.sqrt(dx * dx + dy * dy));
+    }
+
+    // Deixa em metricEdge a aresta de fechamento (último -> primeiro) em metros
+    private void closingMetricEdge(Calibration calibration) {
+        double[] e = metricEdge;
+        e[0] = getX(size - 1);
+        e[1] = getY(size - 1);
+        e[2] = getX(0);
+        e[3] = getY(0);
+        calibration.transform(e, 2);
+    }
+
+    // Refaz as somas métricas só quando a calibração (ou a versão dela) é outra
+    private void ensureMetric(Calibration calibration) {
+        if (calibration == metricFor && calibration.version() == metricVersion) return;
+        if (metricEdge == null) metricEdge = new double[4];
+        metricFor = calibration;
+        metricVersion = calibration.version();
+        metricShoelace.reset();
+        metricLength.reset();
+        for (int i = 0; i < size - 1; i++) addMetricEdge(i, 1.0);
+    }
+
+    private double cross(int i, int j) {
+        return getX(i) * getY(j) - getX(j) * getY(i);
+    }
+
+    private double distance(int i, int j) {
+        double dx = getX(j) - getX(i);
+        double dy = getY(j) - getY(i);
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private void resetSums() {
+        openShoelace.reset();
+        openLength.reset();
+        sumsValid = true;
+    }
+
+    private void ensureSums() {
+        if (sumsValid) return;
+        resetSums();
+        for (int i = 0; i < size - 1; i++) addEdge(i);
+    }
+
+    private void ensureCapacity(int points) {
+        if (points * 2 <= coords.length) return;
+        int newCapacity = Math.max(points, (coords.length >> 1) + (coords.length >> 2) + 1);
+        double[] grown = new double[newCapacity * 2];
+        System.arraycopy(coords, 0, grown, 0, size << 1);
+        coords = grown;
+    }
+}
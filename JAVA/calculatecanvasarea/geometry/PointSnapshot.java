@@ -0,0 +1,52 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+/*
+ * Immutable copy of the selected ring's points at one version, safe to hand
+ * to worker threads while the UI keeps editing the live buffer. Snapshots
+ * are taken on demand and reused until the version changes, so repeated
+ * async requests on unchanged points do not copy again.
+ */
+public final class PointSnapshot {
+    private final double[] xy;
+    private final int size;
+    private final int version;
+    private PointBuffer buffer;
+
+    public PointSnapshot(PointBuffer points, int version) {
+        this.xy = points.toArray();
+        this.size = points.size();
+        this.version = version;
+    }
+
+    // 'previous' when it was taken at this version, otherwise a new snapshot of 'points'.
+    public static PointSnapshot of(PointSnapshot previous, PointBuffer points, int version) {
+        if (previous != null && previous.version == version) return previous;
+        return new PointSnapshot(points, version);
+    }
+
+    public int version() {
+        return version;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getX(int index) {
+        return xy[index << 1];
+    }
+
+    public double getY(int index) {
+        return xy[(index << 1) + 1];
+    }
+
+    // Read-only buffer view for the measuring classes, built once per snapshot. Callers must not modify it,
+    // and since measuring fills its cached metric sums, only one thread at a time may measure it.
+    public synchronized PointBuffer asBuffer() {
+        if (buffer == null) {
+            buffer = new PointBuffer(size);
+            buffer.addAll(xy, size);
+        }
+        return buffer;
+    }
+}
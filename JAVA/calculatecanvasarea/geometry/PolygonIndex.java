@@ -0,0 +1,139 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+import java.util.Arrays;
+
+/*
+ * Prepared polygon for repeated point-in-polygon queries. Edges are bucketed
+ * by the horizontal bands of y they span (CSR layout, coordinates copied per
+ * entry for locality), so a query only ray-casts the edges of one band.
+ * Edges spanning more than MAX_EDGE_BANDS bands are kept once in a separate
+ * list that every query scans, which bounds memory at O(n * MAX_EDGE_BANDS)
+ * whatever the shape. The index is rebuilt lazily when the PointBuffer's
+ * modCount changes.
+ */
+public class PolygonIndex {
+    private static final int MAX_BUCKETS = 4096;
+    private static final int MAX_EDGE_BANDS = 16;
+
+    private PointBuffer source;
+    private int builtFor;
+    private int vertexCount;
+    private double minX, maxX, minY, maxY;
+    private double bucketScale;
+    private int bucketCount;
+    private int[] bucketStart = new int[0];
+    private double[] entries = new double[0]; // xi, yi, xj, yj por entrada
+    private double[] longEdges = new double[0]; // arestas que cruzam faixas demais, no mesmo formato
+    private int longEdgeCount;
+
+    // Plain ray cast over every edge, for one-off queries that do not justify building the index.
+    public static boolean containsLinear(PointBuffer points, double x, double y) {
+        boolean inside = false;
+        int n = points.size();
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            double xi = points.getX(i), yi = points.getY(i);
+            double xj = points.getX(j), yj = points.getY(j);
+            if ((yi > y) != (yj > y) && (x < (xj - xi) * (y - yi) / (yj - yi) + xi)) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    public boolean contains(PointBuffer points, double x, double y) {
+        ensureBuilt(points);
+        if (vertexCount < 3) return false;
+        if (x < minX || x > maxX || y < minY || y > maxY) return false;
+
+        boolean inside = false;
+        int bucket = bucketOf(y);
+        for (int e = bucketStart[bucket] * 4, end = bucketStart[bucket + 1] * 4; e < end; e += 4) {
+            double xi = entries[e], yi = entries[e + 1];
+            double xj = entries[e + 2], yj = entries[e + 3];
+            if ((yi > y) != (yj > y) && (x < (xj - xi) * (y - yi) / (yj - yi) + xi)) {
+                inside = !inside;
+            }
+        }
+        for (int e = 0, end = longEdgeCount * 4; e < end; e += 4) {
+            double xi = longEdges[e], yi = longEdges[e + 1];
+            double xj = longEdges[e + 2], yj = longEdges[e + 3];
+            if ((yi > y) != (yj > y) && (x < (xj - xi) * (y - yi) / (yj - yi) + xi)) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    // Band entries plus long edges: the copies the index holds, for tests.
+    int entryCount() {
+        return bucketStart[bucketCount] + longEdgeCount;
+    }
+
+    private void ensureBuilt(PointBuffer points) {
+        if (points == source && points.modCount() == builtFor) return;
+        source = points;
+        builtFor = points.modCount();
+        vertexCount = points.size();
+        if (vertexCount < 3) return;
+
+        int n = vertexCount;
+        minX = maxX = points.getX(0);
+        minY = maxY = points.getY(0);
+        for (int i = 1; i < n; i++) {
+            double x = points.getX(i), y = points.getY(i);
+            if (x < minX) minX = x; else if (x > maxX) maxX = x;
+            if (y < minY) minY = y; else if (y > maxY) maxY = y;
+        }
+        bucketCount = Math.min(n, MAX_BUCKETS);
+        bucketScale = maxY > minY ? bucketCount / (maxY - minY) : 0.0;
+
+        // Primeira passada: quantas entradas cada faixa recebe (e quantas arestas longas há)
+        int[] start = new int[bucketCount + 1];
+        int longCount = 0;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            int b0 = bucketOf(Math.min(points.getY(i), points.getY(j)));
+            int b1 = bucketOf(Math.max(points.getY(i), points.getY(j)));
+            if (b1 - b0 >= MAX_EDGE_BANDS) {
+                longCount++;
+                continue;
+            }
+            for (int b = b0; b <= b1; b++) start[b + 1]++;
+        }
+        for (int b = 0; b < bucketCount; b++) start[b + 1] += start[b];
+
+        // Segunda passada: copia as arestas para as faixas, ou uma vez para a lista de longas
+        double[] packed = entries.length >= start[bucketCount] * 4 ? entries : new double[start[bucketCount] * 4];
+        double[] longPacked = longEdges.length >= longCount * 4 ? longEdges : new double[longCount * 4];
+        int[] cursor = Arrays.copyOf(start, bucketCount);
+        int longCursor = 0;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            double xi = points.getX(i), yi = points.getY(i);
+            double xj = points.getX(j), yj = points.getY(j);
+            int b0 = bucketOf(Math.min(yi, yj)), b1 = bucketOf(Math.max(yi, yj));
+            if (b1 - b0 >= MAX_EDGE_BANDS) {
+                int e = longCursor++ * 4;
+                longPacked[e] = xi;
+                longPacked[e + 1] = yi;
+                longPacked[e + 2] = xj;
+                longPacked[e + 3] = yj;
+                continue;
+            }
+            for (int b = b0; b <= b1; b++) {
+                int e = cursor[b]++ * 4;
+                packed[e] = xi;
+                packed[e + 1] = yi;
+                packed[e + 2] = xj;
+                packed[e + 3] = yj;
+            }
+        }
+        bucketStart = start;
+        entries = packed;
+        longEdges = longPacked;
+        longEdgeCount = longCount;
+    }
+
+    private int bucketOf(double y) {
+        int bucket = (int) ((y - minY) * bucketScale);
+        return bucket < 0 ? 0 : (bucket >= bucketCount ? bucketCount - 1 : bucket);
+    }
+}
@@ -0,0 +1,128 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+import java.util.Arrays;
+
+/*
+ * One bit per pixel of a width x height raster (rows of wordsPerRow longs,
+ * bit x & 63 of word x >>> 6) marking the pixels that match a target ARGB
+ * color within a per-channel tolerance. Rows are classified 64 pixels per
+ * word from bulk pixel buffers, one row or one band of rows at a time;
+ * distinct rows can be written from different threads. floodFill then walks the mask with a 4-connected scanline fill
+ * and keeps the result as a second mask of the same layout.
+ */
+public final class RasterMask {
+    public final int width, height, wordsPerRow;
+    private final long[] bits;
+    private long[] filled;
+
+    public RasterMask(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.bits = new long[wordsPerRow * height];
+    }
+
+    public static boolean matches(int pixel, int color, int tolerance) {
+        return Math.abs((pixel >>> 24) - (color >>> 24)) <= tolerance
+                && Math.abs(((pixel >> 16) & 0xFF) - ((color >> 16) & 0xFF)) <= tolerance
+                && Math.abs(((pixel >> 8) & 0xFF) - ((color >> 8) & 0xFF)) <= tolerance
+                && Math.abs((pixel & 0xFF) - (color & 0xFF)) <= tolerance;
+    }
+
+    // Matching pixels among pixels[offset, offset + length), without a mask.
+    public static long countMatches(int[] pixels, int offset, int length, int color, int tolerance) {
+        long count = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            if (matches(pixels[i], color, tolerance)) count++;
+        }
+        return count;
+    }
+
+    // Classifies 'w' pixels read from pixels[offset...] into row y starting at
+    // column x0 (a multiple of 64); returns how many match.
+    public long scanRow(int[] pixels, int offset, int x0, int y, int w, int color, int tolerance) {
+        int word = y * wordsPerRow + (x0 >>> 6);
+        long count = 0;
+        for (int c = 0; c < w; c += 64) {
+            long row = 0;
+            int end = Math.min(64, w - c);
+            for (int b = 0; b < end; b++) {
+                if (matches(pixels[offset + c + b], color, tolerance)) row |= 1L << b;
+            }
+            count += Long.bitCount(row);
+            bits[word + (c >>> 6)] = row;
+        }
+        return count;
+    }
+
+    // Classifies a band of 'rows' rows of 'w' pixels, packed in pixels[0, w * rows), into rows y0... starting
+    // at column x0 (a multiple of 64). With a grayscale mode the band is first converted in place and 'color'
+    // must already be a gray level. Returns how many match.
+    public long scanBand(int[] pixels, int x0, int y0, int w, int rows, int color, int tolerance,
+                         String grayscaleMode) {
+        if (grayscaleMode != null) Grayscale.convert(pixels, 0, w * rows, grayscaleMode);
+        long count = 0;
+        for (int row = 0; row < rows; row++) count += scanRow(pixels, row * w, x0, y0 + row, w, color, tolerance);
+        return count;
+    }
+
+    // Marks 'w' pixels of row y starting at column x0 (a multiple of 64) as matching.
+    public void setRun(int y, int x0, int w) {
+        int word = y * wordsPerRow + (x0 >>> 6);
+        for (; w >= 64; w -= 64) bits[word++] = -1L;
+        if (w > 0) bits[word] = (1L << w) - 1;
+    }
+
+    public boolean isSet(int x, int y) {
+        return (bits[y * wordsPerRow + (x >>> 6)] & (1L << (x & 63))) != 0;
+    }
+
+    // Preenchimento por varredura de linhas (4-conectado) a partir da semente,
+    // marcando 'filled'; retorna o número de pixels preenchidos
+    public long floodFill(int seedX, int seedY) {
+        filled = new long[bits.length];
+        if (seedX < 0 || seedY < 0 || seedX >= width || seedY >= height || !open(seedX, seedY)) return 0;
+
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = seedX;
+        stack[top++] = seedY;
+        long count = 0;
+        while (top > 0) {
+            int y = stack[--top], x = stack[--top];
+            if (!open(x, y)) continue;
+            int left = x, right = x;
+            while (left > 0 && open(left - 1, y)) left--;
+            while (right < width - 1 && open(right + 1, y)) right++;
+            for (int i = left; i <= right; i++) filled[y * wordsPerRow + (i >>> 6)] |= 1L << (i & 63);
+            count += right - left + 1;
+
+            // Uma semente por trecho aberto nas linhas vizinhas
+            for (int ny = y - 1; ny <= y + 1; ny += 2) {
+                if (ny < 0 || ny >= height) continue;
+                for (int i = left; i <= right; i++) {
+                    if (!open(i, ny) || (i > left && open(i - 1, ny))) continue;
+                    if (top + 2 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+                    stack[top++] = i;
+                    stack[top++] = ny;
+                }
+            }
+        }
+        return count;
+    }
+
+    public boolean isFilled(int x, int y) {
+        return filled != null && (filled[y * wordsPerRow + (x >>> 6)] & (1L << (x & 63))) != 0;
+    }
+
+    // The region of the last floodFill, in the same layout (for ContourTracer).
+    public long[] filled() {
+        return filled;
+    }
+
+    private boolean open(int x, int y) {
+        int word = y * wordsPerRow + (x >>> 6);
+        long bit = 1L << (x & 63);
+        return (bits[word] & bit) != 0 && (filled[word] & bit) == 0;
+    }
+}
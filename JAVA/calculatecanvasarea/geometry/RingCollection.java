@@ -0,0 +1,196 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+import java.util.LinkedHashMap;
+
+/*
+ * Set of polygon rings addressed by id, each either an outer boundary or a
+ * hole. One ring is selected at a time and is the only one edited directly;
+ * the signed area of all the others is summed when the selection or the set
+ * changes, so totalArea() only adds the selected ring's running area, O(1).
+ * Bounding boxes are cached per ring and rebuilt when that ring's modCount
+ * changes; hit-testing rejects by bounding box before using the ring's index.
+ */
+public class RingCollection {
+    private static class Ring {
+        final int id;
+        final PointBuffer points = new PointBuffer();
+        final PolygonIndex index = new PolygonIndex();
+        boolean hole;
+
+        int boundsFor = -1;
+        double minX, minY, maxX, maxY;
+
+        Ring(int id, boolean hole) {
+            this.id = id;
+            this.hole = hole;
+        }
+    }
+
+    private final LinkedHashMap<Integer, Ring> rings = new LinkedHashMap<>();
+    private int nextId = 1;
+    private Ring selected;
+    private double othersSignedArea; // soma dos anéis não selecionados (buracos negativos)
+
+    public RingCollection() {
+        selected = create(false);
+    }
+
+    // Creates a ring and selects it.
+    public int addRing(boolean hole) {
+        Ring ring = create(hole);
+        selected = ring;
+        refreshOthers();
+        return ring.id;
+    }
+
+    public boolean select(int id) {
+        Ring ring = rings.get(id);
+        if (ring == null) return false;
+        if (ring != selected) {
+            selected = ring;
+            refreshOthers();
+        }
+        return true;
+    }
+
+    // Removing the selected ring selects the first remaining one (or a new empty ring).
+    public boolean remove(int id) {
+        Ring ring = rings.remove(id);
+        if (ring == null) return false;
+        if (ring == selected) {
+            selected = rings.isEmpty() ? create(false) : rings.values().iterator().next();
+        }
+        refreshOthers();
+        return true;
+    }
+
+    public boolean setHole(int id, boolean hole) {
+        Ring ring = rings.get(id);
+        if (ring == null) return false;
+        ring.hole = hole;
+        refreshOthers();
+        return true;
+    }
+
+    public int selectedId() {
+        return selected.id;
+    }
+
+    public PointBuffer selectedPoints() {
+        return selected.points;
+    }
+
+    // Read access to any ring's points; edits must go through the selected ring.
+    public PointBuffer points(int id) {
+        Ring ring = rings.get(id);
+        return ring == null ? null : ring.points;
+    }
+
+    public boolean contains(int id) {
+        return rings.containsKey(id);
+    }
+
+    public int size() {
+        return rings.size();
+    }
+
+    public int[] ids() {
+        int[] ids = new int[rings.size()];
+        int i = 0;
+        for (Integer id : rings.keySet()) ids[i++] = id;
+        return ids;
+    }
+
+    public boolean isHole(int id) {
+        Ring ring = rings.get(id);
+        return ring != null && ring.hole;
+    }
+
+    // [minX, minY, maxX, maxY], or null for an unknown or empty ring.
+    public double[] bounds(int id) {
+        Ring ring = rings.get(id);
+        if (ring == null || ring.points.isEmpty()) return null;
+        ensureBounds(ring);
+        return new double[]{ring.minX, ring.minY, ring.maxX, ring.maxY};
+    }
+
+    // Outer areas minus hole areas.
+    public double totalArea() {
+        return Math.max(0.0, othersSignedArea + signedContribution(selected));
+    }
+
+    // Inside when inside at least one outer ring and not inside any hole.
+    public boolean containsPoint(double x, double y) {
+        boolean inOuter = false;
+        for (Ring ring : rings.values()) {
+            if (ring.points.size() < 3) continue;
+            ensureBounds(ring);
+            if (x < ring.minX || x > ring.maxX || y < ring.minY || y > ring.maxY) continue;
+            if (ring.index.contains(ring.points, x, y)) {
+                if (ring.hole) return false;
+                inOuter = true;
+            }
+        }
+        return inOuter;
+    }
+
+    // Restoring a saved set: beginRestore(), restoreRing() for each ring, then endRestore().
+    public void beginRestore() {
+        rings.clear();
+        selected = null;
+        nextId = 1;
+    }
+
+    public PointBuffer restoreRing(int id, boolean hole) {
+        Ring ring = new Ring(id, hole);
+        rings.put(id, ring);
+        nextId = Math.max(nextId, id + 1);
+        return ring.points;
+    }
+
+    public void endRestore(int selectedId) {
+        selected = rings.get(selectedId);
+        if (selected == null) {
+            selected = rings.isEmpty() ? create(false) : rings.values().iterator().next();
+        }
+        refreshOthers();
+    }
+
+    private Ring create(boolean hole) {
+        Ring ring = new Ring(nextId++, hole);
+        rings.put(ring.id, ring);
+        return ring;
+    }
+
+    private void refreshOthers() {
+        double sum = 0.0;
+        for (Ring ring : rings.values()) {
+            if (ring != selected) sum += signedContribution(ring);
+        }
+        othersSignedArea = sum;
+    }
+
+    private static double signedContribution(Ring ring) {
+        double area = ring.points.closedArea();
+        return ring.hole ? -area : area;
+    }
+
+    private static void ensureBounds(Ring ring) {
+        PointBuffer points = ring.points;
+        if (ring.boundsFor == points.modCount()) return;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0, n = points.size(); i < n; i++) {
+            double x = points.getX(i), y = points.getY(i);
+            if (x < minX) minX = x;
+            if (x > maxX) maxX = x;
+            if (y < minY) minY = y;
+            if (y > maxY) maxY = y;
+        }
+        ring.minX = minX;
+        ring.minY = minY;
+        ring.maxX = maxX;
+        ring.maxY = maxY;
+        ring.boundsFor = points.modCount();
+    }
+}
@@ -0,0 +1,148 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+/*
+ * Online polyline simplifier (sleeve fitting). The last stored point is a
+ * floating end that may be replaced while every sample skipped since the
+ * anchor (the point before it) stays within 'tolerance' of the segment
+ * anchor -> end. The set of admissible directions from the anchor is kept
+ * as an angular window, so each sample costs O(1). Samples closer than the
+ * tolerance to the last stored point are dropped (radial pre-filter).
+ * Raw shoelace sums are kept alongside to report the area error.
+ */
+public class StreamSimplifier {
+    private double tolerance;
+
+    private int syncedModCount = -1;
+    private boolean hasFloating;
+    private double anchorX, anchorY;
+    private double baseAngle;              // direção de referência da janela
+    private double windowLow, windowHigh;  // relativo a baseAngle
+    private double floatingAngle;          // direção da ponta flutuante, relativa a baseAngle
+    private double farthest;               // maior distância à âncora dentro da janela
+
+    // Amostras brutas desde a última sincronização
+    private int rawCount;
+    private double rawOpen;
+    private double rawFirstX, rawFirstY, rawLastX, rawLastY;
+
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+        reset();
+    }
+
+    // Forces a resync with the target buffer on the next call, e.g. after switching buffers.
+    public void reset() {
+        syncedModCount = -1;
+    }
+
+    public void add(PointBuffer points, double x, double y) {
+        if (points.modCount() != syncedModCount) resync(points);
+
+        if (rawCount == 0) {
+            rawFirstX = x;
+            rawFirstY = y;
+        } else {
+            rawOpen += rawLastX * y - x * rawLastY;
+        }
+        rawLastX = x;
+        rawLastY = y;
+        rawCount++;
+
+        int size = points.size();
+        if (size == 0) {
+            points.add(x, y);
+            anchorX = x;
+            anchorY = y;
+            hasFloating = false;
+            syncedModCount = points.modCount();
+            return;
+        }
+
+        double lx = points.getX(size - 1), ly = points.getY(size - 1);
+        double rx = x - lx, ry = y - ly;
+        boolean nearLast = rx * rx + ry * ry < tolerance * tolerance;
+        if (nearLast && !hasFloating) return; // filtro radial: perto de um vértice fixo
+
+        if (hasFloating) {
+            double dx = x - anchorX, dy = y - anchorY;
+            double distance = Math.sqrt(dx * dx + dy * dy);
+            double angle = relativeAngle(Math.atan2(dy, dx));
+            double half = distance > tolerance ? Math.asin(tolerance / distance) : Math.PI;
+            double low = Math.max(windowLow, angle - half);
+            double high = Math.min(windowHigh, angle + half);
+            if (low <= high) {
+                if (nearLast && floatingAngle >= low && floatingAngle <= high) {
+                    // Descartada, mas a ponta flutuante passa a ter que cobri-la
+                    windowLow = low;
+                    windowHigh = high;
+                    return;
+                }
+                if (!nearLast && angle >= windowLow && angle <= windowHigh && distance >= farthest) {
+                    // Substitui a ponta flutuante: todos os pontos pulados continuam na faixa
+                    points.removeLast();
+                    points.add(x, y);
+                    windowLow = low;
+                    windowHigh = high;
+                    floatingAngle = angle;
+                    farthest = distance;
+                    syncedModCount = points.modCount();
+                    return;
+                }
+            }
+        }
+
+        // O último ponto vira vértice fixo e passa a ser a âncora
+        anchorX = lx;
+        anchorY = ly;
+        openWindow(x, y);
+        points.add(x, y);
+        hasFloating = true;
+        syncedModCount = points.modCount();
+    }
+
+    public int rawCount(PointBuffer points) {
+        if (points.modCount() != syncedModCount) resync(points);
+        return rawCount;
+    }
+
+    public double areaError(PointBuffer points) {
+        if (points.modCount() != syncedModCount) resync(points);
+        double raw = rawCount < 3 ? 0.0 : (rawOpen + rawLastX * rawFirstY - rawFirstX * rawLastY) / 2.0;
+        return Math.abs(raw - points.signedArea());
+    }
+
+    private void openWindow(double x, double y) {
+        double dx = x - anchorX, dy = y - anchorY;
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        double half = distance > tolerance ? Math.asin(tolerance / distance) : Math.PI;
+        baseAngle = Math.atan2(dy, dx);
+        windowLow = -half;
+        windowHigh = half;
+        floatingAngle = 0.0;
+        farthest = distance;
+    }
+
+    private double relativeAngle(double angle) {
+        double relative = angle - baseAngle;
+        if (relative > Math.PI) relative -= 2 * Math.PI;
+        else if (relative <= -Math.PI) relative += 2 * Math.PI;
+        return relative;
+    }
+
+    // Alterações externas (undo, import, reset): recomeça a partir dos pontos guardados
+    private void resync(PointBuffer points) {
+        int size = points.size();
+        hasFloating = false;
+        rawCount = size;
+        rawOpen = points.openShoelace();
+        if (size > 0) {
+            anchorX = points.getX(size - 1);
+            anchorY = points.getY(size - 1);
+            rawFirstX = points.getX(0);
+            rawFirstY = points.getY(0);
+            rawLastX = anchorX;
+            rawLastY = anchorY;
+        }
+        syncedModCount = points.modCount();
+    }
+}
@@ -0,0 +1,37 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AreaCalculatorTest {
+    private static PointBuffer points(double... xy) {
+        PointBuffer points = new PointBuffer();
+        points.addAll(xy, xy.length / 2);
+        return points;
+    }
+
+    @Test
+    void areaOfRectangleIgnoresOrientation() {
+        assertEquals(12.0, AreaCalculator.calculateArea(points(0, 0, 4, 0, 4, 3, 0, 3)), 0.0);
+        assertEquals(12.0, AreaCalculator.calculateArea(points(0, 3, 4, 3, 4, 0, 0, 0)), 0.0);
+    }
+
+    @Test
+    void fewerThanThreePointsHaveNoArea() {
+        assertEquals(0.0, AreaCalculator.calculateArea(points(0, 0, 4, 0)), 0.0);
+    }
+
+    @Test
+    void perimeterIncludesClosingEdge() {
+        assertEquals(14.0, AreaCalculator.calculatePerimeter(points(0, 0, 4, 0, 4, 3, 0, 3)), 1e-12);
+        assertEquals(12.0, AreaCalculator.calculatePerimeter(points(0, 0, 4, 0, 4, 3)), 1e-12);
+    }
+
+    @Test
+    void scaleIsMetersPerPixel() {
+        assertEquals(0.5, AreaCalculator.calculateScale(new double[]{0, 0}, new double[]{6, 8}, 5), 1e-12);
+        assertEquals(0.0, AreaCalculator.calculateScale(new double[]{1, 1}, new double[]{1, 1}, 5), 0.0);
+        assertEquals(0.0, AreaCalculator.calculateScale(null, new double[]{1, 1}, 5), 0.0);
+    }
+}
@@ -0,0 +1,209 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/*
+ * The running metric area and perimeter kept by PointBuffer against the
+ * points transformed and measured in one pass, through edits and
+ * calibration changes, and both against hand-computed values for rotated,
+ * skewed and perspective calibrations.
+ */
+class CalibrationTest {
+    private static final double[] IMAGE = {100, 100, 700, 120, 760, 560, 60, 540};
+    private static final double[] WORLD = {0, 0, 12, 0, 12, 9, 0, 9};
+
+    @Test
+    void runningMetricSumsMatchBatchAfterRandomEdits() {
+        for (int trial = 0; trial < 100; trial++) {
+            Random random = new Random(trial);
+            Calibration calibration = new Calibration();
+            calibration.setPerspective(IMAGE, WORLD);
+            PointBuffer points = new PointBuffer(4);
+
+            for (int op = 0; op < 300; op++) {
+                switch (random.nextInt(12)) {
+                    case 0:
+                        points.removeLast();
+                        break;
+                    case 1:
+                        points.truncate(random.nextInt(points.size() + 1));
+                        break;
+                    case 2: {
+                        int count = 1 + random.nextInt(20);
+                        double[] xy = new double[count * 2];
+                        for (int i = 0; i < xy.length; i++) xy[i] = 100 + random.nextDouble() * 600;
+                        points.addAll(xy, count);
+                        break;
+                    }
+                    case 3:
+                        if (!points.isEmpty()) {
+                            points.set(random.nextInt(points.size()), 100 + random.nextDouble() * 600,
+                                       100 + random.nextDouble() * 400);
+                        }
+                        break;
+                    case 4:
+                        // Troca a calibração no meio: as somas são refeitas
+                        if (random.nextBoolean()) {
+                            calibration.clearPerspective();
+                        } else {
+                            calibration.setPerspective(IMAGE, WORLD);
+                        }
+                        break;
+                    default:
+                        points.add(100 + random.nextDouble() * 600, 100 + random.nextDouble() * 400);
+                }
+                if (op % 3 == 0) continue; // nem toda edição é seguida de uma medição
+                String where = "trial " + trial + ", operation " + op;
+                assertEquals(batchArea(calibration, points), calibration.area(points), 1e-9, where);
+                assertEquals(batchPerimeter(calibration, points), calibration.perimeter(points), 1e-9, where);
+            }
+        }
+    }
+
+    @Test
+    void affineCalibrationKeepsItsOwnSums() {
+        Calibration calibration = new Calibration();
+        calibration.setReferenceLines(new double[]{0, 0}, new double[]{200, 0}, 4,
+                                      new double[]{0, 0}, new double[]{0, 100}, 1);
+        PointBuffer points = new PointBuffer();
+        points.add(0, 0);
+        points.add(200, 0);
+        assertEquals(8.0, calibration.perimeter(points), 1e-12);
+        points.add(200, 100);
+        points.add(0, 100);
+        assertEquals(10.0, calibration.perimeter(points), 1e-12);
+        assertEquals(4.0, calibration.area(points), 1e-12);
+        points.removeLast();
+        assertEquals(4 + 1 + Math.hypot(4, 1), calibration.perimeter(points), 1e-12);
+    }
+
+    @Test
+    void rotatedReferenceLinesMeasureInTheirOwnAxes() {
+        // Vermelha a 30 graus, azul perpendicular; as duas com 50 px por metro
+        double cos = Math.cos(Math.toRadians(30)), sin = Math.sin(Math.toRadians(30));
+        Calibration calibration = new Calibration();
+        calibration.setReferenceLines(new double[]{100, 100}, new double[]{100 + 200 * cos, 100 + 200 * sin}, 4,
+                                      new double[]{100, 100}, new double[]{100 - 100 * sin, 100 + 100 * cos}, 2);
+
+        // Retângulo de 3 m ao longo da vermelha por 2 m ao longo da azul
+        PointBuffer points = new PointBuffer();
+        points.add(100, 100);
+        points.add(100 + 150 * cos, 100 + 150 * sin);
+        points.add(100 + 150 * cos - 100 * sin, 100 + 150 * sin + 100 * cos);
+        points.add(100 - 100 * sin, 100 + 100 * cos);
+        assertEquals(6.0, calibration.area(points), 1e-9);
+        assertEquals(10.0, calibration.perimeter(points), 1e-9);
+
+        double[] xy = points.toArray();
+        calibration.transform(xy, 4);
+        assertArrayEquals(new double[]{0, 0, 3, 0, 3, 2, 0, 2}, xy, 1e-9);
+    }
+
+    @Test
+    void skewedReferenceLinesGiveTheShearedArea() {
+        // Vermelha horizontal, 100 px = 2 m; azul inclinada, (50, 100) px = 4 m
+        Calibration calibration = new Calibration();
+        calibration.setReferenceLines(new double[]{0, 0}, new double[]{100, 0}, 2,
+                                      new double[]{0, 0}, new double[]{50, 100}, 4);
+        assertEquals(8.0 / 10000, calibration.areaScale(), 1e-15);
+
+        // O paralelogramo das duas linhas é o retângulo de 2 x 4 m
+        PointBuffer points = new PointBuffer();
+        points.add(0, 0);
+        points.add(100, 0);
+        points.add(150, 100);
+        points.add(50, 100);
+        assertEquals(8.0, calibration.area(points), 1e-9);
+        assertEquals(12.0, calibration.perimeter(points), 1e-9);
+
+        // Um triângulo retângulo na imagem vira (0, 0), (2, 0), (-1, 4): área 4, lados 2, 5 e hypot(1, 4)
+        PointBuffer triangle = new PointBuffer();
+        triangle.add(0, 0);
+        triangle.add(100, 0);
+        triangle.add(0, 100);
+        assertEquals(4.0, calibration.area(triangle), 1e-9);
+        assertEquals(2 + 5 + Math.hypot(1, 4), calibration.perimeter(triangle), 1e-9);
+    }
+
+    @Test
+    void perspectiveMapsEachImagePointToItsWorldPoint() {
+        Calibration calibration = new Calibration();
+        calibration.setPerspective(IMAGE, WORLD);
+        double[] xy = IMAGE.clone();
+        calibration.transform(xy, 4);
+        assertArrayEquals(WORLD, xy, 1e-9);
+
+        // A homografia preserva retas: o cruzamento das diagonais vai para o centro do retângulo
+        double[] center = intersection(IMAGE[0], IMAGE[1], IMAGE[4], IMAGE[5], IMAGE[2], IMAGE[3], IMAGE[6], IMAGE[7]);
+        calibration.transform(center, 1);
+        assertArrayEquals(new double[]{6, 4.5}, center, 1e-9);
+    }
+
+    @Test
+    void perspectiveQuadHasItsWorldArea() {
+        Calibration calibration = new Calibration();
+        calibration.setPerspective(IMAGE, WORLD);
+        PointBuffer points = new PointBuffer();
+        points.addAll(IMAGE, 4);
+        assertEquals(12 * 9, calibration.area(points), 1e-9);
+        assertEquals(2 * (12 + 9), calibration.perimeter(points), 1e-9);
+
+        // Metade do quadrilátero, cortada pela diagonal: 54 m²
+        points.removeLast();
+        assertEquals(12 * 9 / 2.0, calibration.area(points), 1e-9);
+        assertEquals(12 + 9 + 15, calibration.perimeter(points), 1e-9);
+    }
+
+    @Test
+    void perspectivePointsAreKeptUntilCleared() {
+        Calibration calibration = new Calibration();
+        assertNull(calibration.perspectivePoints());
+        calibration.setPerspective(IMAGE, WORLD);
+        double[] saved = calibration.perspectivePoints();
+        assertArrayEquals(IMAGE, Arrays.copyOfRange(saved, 0, 8));
+        assertArrayEquals(WORLD, Arrays.copyOfRange(saved, 8, 16));
+        assertArrayEquals(saved, calibration.copy().perspectivePoints());
+        calibration.clearPerspective();
+        assertNull(calibration.perspectivePoints());
+    }
+
+    // Cruzamento da reta (x0, y0)-(x1, y1) com a reta (x2, y2)-(x3, y3)
+    private static double[] intersection(double x0, double y0, double x1, double y1,
+                                         double x2, double y2, double x3, double y3) {
+        double dx1 = x1 - x0, dy1 = y1 - y0, dx2 = x3 - x2, dy2 = y3 - y2;
+        double t = ((x2 - x0) * dy2 - (y2 - y0) * dx2) / (dx1 * dy2 - dy1 * dx2);
+        return new double[]{x0 + t * dx1, y0 + t * dy1};
+    }
+
+    private static double batchArea(Calibration calibration, PointBuffer points) {
+        if (!calibration.isCalibrated() || points.size() < 3) return 0.0;
+        if (!calibration.isPerspective()) return points.closedArea() * calibration.areaScale();
+        double[] xy = metric(calibration, points);
+        int n = points.size();
+        double sum = 0;
+        for (int i = 0, j = n - 1; i < n; j = i++) sum += xy[j * 2] * xy[i * 2 + 1] - xy[i * 2] * xy[j * 2 + 1];
+        return Math.abs(sum) / 2.0;
+    }
+
+    private static double batchPerimeter(Calibration calibration, PointBuffer points) {
+        if (!calibration.isCalibrated() || points.size() < 2) return 0.0;
+        double[] xy = metric(calibration, points);
+        int n = points.size();
+        double sum = 0;
+        for (int i = 0, j = n - 1; i < n; j = i++) sum += Math.hypot(xy[i * 2] - xy[j * 2], xy[i * 2 + 1] - xy[j * 2 + 1]);
+        return sum;
+    }
+
+    private static double[] metric(Calibration calibration, PointBuffer points) {
+        double[] xy = points.toArray();
+        calibration.transform(xy, points.size());
+        return xy;
+    }
+}
@@ -0,0 +1,168 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * ContourTracer on random 4-connected regions from RasterMask.floodFill: the
+ * contour is a closed axis-aligned walk over pixel corners whose shoelace area
+ * is the region's pixel count plus its holes. A hole is background that cannot
+ * reach the border, where background may pass between two region pixels that
+ * only touch diagonally. Small hand-drawn masks pin down the saddle cases.
+ */
+class ContourTracerTest {
+
+    @Test
+    void tracedAreaIsPixelCountPlusHoles() {
+        for (int trial = 0; trial < 3000; trial++) {
+            Random random = new Random(trial);
+            int width = 1 + random.nextInt(trial % 10 == 0 ? 150 : 40);
+            int height = 1 + random.nextInt(40);
+            double density = 0.3 + random.nextDouble() * 0.6;
+
+            // Máscara aleatória e a região 4-conectada de um pixel marcado qualquer
+            RasterMask mask = new RasterMask(width, height);
+            int[] row = new int[width];
+            int seedX = -1, seedY = -1;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    boolean set = random.nextDouble() < density;
+                    row[x] = set ? 1 : 0;
+                    if (set && (seedX < 0 || random.nextInt(8) == 0)) {
+                        seedX = x;
+                        seedY = y;
+                    }
+                }
+                mask.scanRow(row, 0, 0, y, width, 1, 0);
+            }
+            if (seedX < 0) continue;
+            long pixels = mask.floodFill(seedX, seedY);
+
+            double[] contour = ContourTracer.trace(mask.filled(), width, height, mask.wordsPerRow);
+            String where = "trial " + trial + " (" + width + "x" + height + ")";
+            assertWalk(contour, where);
+            assertEquals(pixels + holes(mask, width, height), Math.abs(shoelace(contour)), 1e-9, where);
+        }
+    }
+
+    @Test
+    void emptyMaskHasNoContour() {
+        assertEquals(0, ContourTracer.trace(new long[3], 5, 3, 1).length);
+    }
+
+    @Test
+    void singlePixelIsItsFourCorners() {
+        // A partir do canto superior esquerdo, descendo primeiro
+        double[] contour = ContourTracer.trace(mask(new String[]{"...", ".X.", "..."}), 3, 3, 1);
+        assertArrayEquals(new double[]{1, 1, 1, 2, 2, 2, 2, 1}, contour);
+    }
+
+    @Test
+    void diagonalNeighboursAreSeparateRegions() {
+        // Nos dois sentidos da sela: só a região do pixel mais acima à esquerda é contornada
+        assertEquals(1.0, Math.abs(shoelace(ContourTracer.trace(mask(new String[]{"X.", ".X"}), 2, 2, 1))));
+        assertEquals(1.0, Math.abs(shoelace(ContourTracer.trace(mask(new String[]{".X", "X."}), 2, 2, 1))));
+        assertEquals(3.0, Math.abs(shoelace(ContourTracer.trace(mask(new String[]{
+                "XX.",
+                "X.X",
+                ".XX"}), 3, 3, 1))));
+    }
+
+    @Test
+    void holeOpenAtADiagonalIsOutside() {
+        // O buraco do meio escapa pelo canto entre (2, 1) e (1, 2): o contorno passa duas vezes por ali
+        double[] open = ContourTracer.trace(mask(new String[]{
+                "XXX",
+                "X.X",
+                "XX."}), 3, 3, 1);
+        assertWalk(open, "open");
+        assertEquals(7.0, Math.abs(shoelace(open)));
+
+        double[] closed = ContourTracer.trace(mask(new String[]{
+                "XXX",
+                "X.X",
+                "XXX"}), 3, 3, 1);
+        assertArrayEquals(new double[]{0, 0, 0, 3, 3, 3, 3, 0}, closed);
+    }
+
+    @Test
+    void straightRunsCostOneVertex() {
+        double[] contour = ContourTracer.trace(mask(new String[]{
+                "..........",
+                ".XXXXXXXX.",
+                ".XXXXXXXX.",
+                ".XXXX.....",
+                "..........",}), 10, 5, 1);
+        assertArrayEquals(new double[]{1, 1, 1, 4, 5, 4, 5, 3, 9, 3, 9, 1}, contour);
+    }
+
+    // Vértices em cantos inteiros, arestas horizontais ou verticais, fechando no primeiro
+    private static void assertWalk(double[] contour, String where) {
+        assertTrue(contour.length >= 8, where);
+        int n = contour.length / 2;
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            double x = contour[i * 2], y = contour[i * 2 + 1];
+            assertEquals(Math.rint(x), x, where);
+            assertEquals(Math.rint(y), y, where);
+            assertTrue((x == contour[j * 2]) != (y == contour[j * 2 + 1]), where + ", edge " + i);
+        }
+    }
+
+    private static double shoelace(double[] xy) {
+        int n = xy.length / 2;
+        double sum = 0;
+        for (int i = 0, j = n - 1; i < n; j = i++) sum += xy[j * 2] * xy[i * 2 + 1] - xy[i * 2] * xy[j * 2 + 1];
+        return sum / 2;
+    }
+
+    // Fundo que não alcança a borda, andando em 8 direções fora da região
+    private static long holes(RasterMask mask, int width, int height) {
+        boolean[] outside = new boolean[width * height];
+        ArrayDeque<int[]> queue = new ArrayDeque<>();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if ((x == 0 || y == 0 || x == width - 1 || y == height - 1) && !mask.isFilled(x, y)) {
+                    outside[y * width + x] = true;
+                    queue.add(new int[]{x, y});
+                }
+            }
+        }
+        while (!queue.isEmpty()) {
+            int[] p = queue.poll();
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    int x = p[0] + dx, y = p[1] + dy;
+                    if (x < 0 || y < 0 || x >= width || y >= height) continue;
+                    if (outside[y * width + x] || mask.isFilled(x, y)) continue;
+                    outside[y * width + x] = true;
+                    queue.add(new int[]{x, y});
+                }
+            }
+        }
+        long holes = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (!outside[y * width + x] && !mask.isFilled(x, y)) holes++;
+            }
+        }
+        return holes;
+    }
+
+    // Uma linha por string, 'X' marcado; até 64 colunas
+    private static long[] mask(String[] rows) {
+        long[] mask = new long[rows.length];
+        for (int y = 0; y < rows.length; y++) {
+            for (int x = 0; x < rows[y].length(); x++) {
+                if (rows[y].charAt(x) == 'X') mask[y] |= 1L << x;
+            }
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,182 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Drives DirtyRegion the way RedrawCanvas does, against an abstracted
+ * display: int[] front/back buffers over an int[] drawing, composed only
+ * inside the dirty region and swapped every frame.
+ */
+class DirtyRegionTest {
+    private static final int WIDTH = 320, HEIGHT = 240;
+    private static final int LINE = 0xFFFF0000;
+
+    // Superfície de exibição abstrata: desenho, linha temporária e os dois buffers
+    private static final class FakeDisplay {
+        final DirtyRegion dirty = new DirtyRegion();
+        final int[] drawing = new int[WIDTH * HEIGHT];
+        int[] front = new int[WIDTH * HEIGHT], back = new int[WIDTH * HEIGHT];
+        int lineX0, lineY0, lineX1, lineY1;
+        int framesComposed, pixelsTouched;
+
+        FakeDisplay() {
+            dirty.invalidateBuffers(WIDTH, HEIGHT);
+        }
+
+        // Um "traço": pinta um retângulo do desenho e marca a região
+        void stroke(int left, int top, int right, int bottom, int color) {
+            for (int y = Math.max(0, top); y < Math.min(HEIGHT, bottom); y++) {
+                for (int x = Math.max(0, left); x < Math.min(WIDTH, right); x++) drawing[y * WIDTH + x] = color;
+            }
+            dirty.add(left, top, right, bottom);
+        }
+
+        void setLine(int x0, int y0, int x1, int y1) {
+            lineX0 = x0;
+            lineY0 = y0;
+            lineX1 = x1;
+            lineY1 = y1;
+        }
+
+        // Mesmo roteiro do composeFrame: linha, região, composição no back e troca
+        void frame() {
+            dirty.moveLine(lineX0, lineY0, lineX1, lineY1, 5f);
+            if (!dirty.beginFrame(WIDTH, HEIGHT)) {
+                pixelsTouched = 0;
+                return;
+            }
+            int l = dirty.composeLeft(), t = dirty.composeTop(), r = dirty.composeRight(), b = dirty.composeBottom();
+            for (int y = t; y < b; y++) {
+                for (int x = l; x < r; x++) back[y * WIDTH + x] = pixel(x, y);
+            }
+            pixelsTouched = (r - l) * (b - t);
+            framesComposed++;
+            dirty.endFrame();
+            int[] shown = back;
+            back = front;
+            front = shown;
+        }
+
+        // Desenho com a linha temporária por cima (a caixa do segmento, sem a margem)
+        int pixel(int x, int y) {
+            boolean onLine = x >= Math.min(lineX0, lineX1) && x <= Math.max(lineX0, lineX1)
+                    && y >= Math.min(lineY0, lineY1) && y <= Math.max(lineY0, lineY1);
+            return onLine ? LINE : drawing[y * WIDTH + x];
+        }
+
+        int[] expected() {
+            int[] expected = new int[WIDTH * HEIGHT];
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) expected[y * WIDTH + x] = pixel(x, y);
+            }
+            return expected;
+        }
+    }
+
+    @Test
+    void frontBufferAlwaysShowsTheDrawingAndCurrentLine() {
+        Random random = new Random(7);
+        FakeDisplay display = new FakeDisplay();
+        for (int frame = 0; frame < 2000; frame++) {
+            // Quadros sem mudança, com vários traços, traços fora do canvas e a linha se movendo
+            int strokes = random.nextInt(4);
+            for (int i = 0; i < strokes; i++) {
+                int x = random.nextInt(WIDTH + 40) - 20, y = random.nextInt(HEIGHT + 40) - 20;
+                display.stroke(x, y, x + 1 + random.nextInt(30), y + 1 + random.nextInt(30), random.nextInt());
+            }
+            if (random.nextInt(3) == 0) {
+                int x = random.nextInt(WIDTH), y = random.nextInt(HEIGHT);
+                display.setLine(x, y, x + random.nextInt(60) - 30, y + random.nextInt(60) - 30);
+            }
+            display.frame();
+            assertArrayEquals(display.expected(), display.front, "frame " + frame);
+        }
+    }
+
+    @Test
+    void idleFramesComposeNothing() {
+        FakeDisplay display = new FakeDisplay();
+        display.frame();
+        display.frame(); // o back ainda estava atrasado no quadro inteiro
+        int composed = display.framesComposed;
+        display.frame();
+        assertEquals(composed, display.framesComposed);
+        assertEquals(0, display.pixelsTouched);
+
+        // Um traço pequeno recompõe só a sua região, duas vezes (front e back)
+        display.stroke(10, 10, 20, 20, 1);
+        display.frame();
+        assertEquals(100, display.pixelsTouched);
+        display.frame();
+        assertEquals(100, display.pixelsTouched);
+        display.frame();
+        assertEquals(0, display.pixelsTouched);
+    }
+
+    @Test
+    void damageOutsideTheCanvasIsDropped() {
+        DirtyRegion dirty = new DirtyRegion();
+        dirty.add(-50, -50, -10, -10);
+        assertFalse(dirty.beginFrame(WIDTH, HEIGHT));
+        dirty.add(WIDTH - 5, HEIGHT - 5, WIDTH + 50, HEIGHT + 50);
+        assertTrue(dirty.beginFrame(WIDTH, HEIGHT));
+        assertEquals(WIDTH - 5, dirty.composeLeft());
+        assertEquals(WIDTH, dirty.composeRight());
+        assertEquals(HEIGHT, dirty.composeBottom());
+    }
+
+    @Test
+    void segmentDamageCoversTheStrokeWidth() {
+        // Segmento diagonal invertido, espessura 5: meia largura arredondada para 3 px, mais 1 de antialiasing
+        DirtyRegion dirty = new DirtyRegion();
+        dirty.addSegment(120.5, 80.2, 40.0, 60.7, 5f);
+        assertTrue(dirty.beginFrame(WIDTH, HEIGHT));
+        assertEquals(40 - 4, dirty.composeLeft());
+        assertEquals(60 - 4, dirty.composeTop());
+        assertEquals(121 + 4, dirty.composeRight());
+        assertEquals(81 + 4, dirty.composeBottom());
+    }
+
+    @Test
+    void redrawPathAllocatesNothingPerFrame() {
+        FakeDisplay display = new FakeDisplay();
+        int[] script = new int[4096];
+        Random random = new Random(11);
+        for (int i = 0; i < script.length; i++) script[i] = random.nextInt(WIDTH * HEIGHT);
+
+        // Aquece (e deixa o JIT compilar) antes de medir
+        for (int frame = 0; frame < 20_000; frame++) redraw(display, script, frame);
+
+        long allocated = allocatedBytes();
+        int frames = 50_000;
+        for (int frame = 0; frame < frames; frame++) redraw(display, script, frame);
+        allocated = allocatedBytes() - allocated;
+
+        assertEquals(0L, allocated / frames, allocated + " bytes allocated over " + frames + " redraws");
+        assertTrue(allocated < 16 * 1024, allocated + " bytes allocated over " + frames + " redraws");
+        assertTrue(Arrays.equals(display.expected(), display.front));
+    }
+
+    // Um quadro de traçado: um segmento novo, a linha de referência mudando e a composição
+    private static void redraw(FakeDisplay display, int[] script, int frame) {
+        int p = script[frame & (script.length - 1)];
+        int x = p % WIDTH, y = p / WIDTH;
+        display.stroke(x, y, x + 4, y + 4, frame);
+        display.setLine(x, y, WIDTH - 1 - x, y);
+        display.frame();
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
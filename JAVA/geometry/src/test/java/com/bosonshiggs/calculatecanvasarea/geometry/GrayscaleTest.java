@@ -0,0 +1,50 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GrayscaleTest {
+    private static final int RED = 0xFFFF0000, GREEN = 0xFF00FF00, BLUE = 0xFF0000FF;
+
+    @Test
+    void averageWeighsChannelsEqually() {
+        int[] pixels = {RED, GREEN, BLUE, 0xFF102030};
+        Grayscale.convert(pixels, 0, pixels.length, Grayscale.AVERAGE);
+        assertArrayEquals(new int[]{gray(85), gray(85), gray(85), gray(0x20)}, pixels);
+    }
+
+    @Test
+    void luminanceModesFavourGreen() {
+        int[] rec601 = {RED, GREEN, BLUE};
+        Grayscale.convert(rec601, 0, rec601.length, Grayscale.REC601);
+        assertArrayEquals(new int[]{gray(76), gray(149), gray(28)}, rec601);
+
+        int[] rec709 = {RED, GREEN, BLUE};
+        Grayscale.convert(rec709, 0, rec709.length, Grayscale.REC709);
+        assertArrayEquals(new int[]{gray(53), gray(182), gray(18)}, rec709);
+    }
+
+    @Test
+    void whiteStaysWhiteAndOutputIsOpaque() {
+        for (String mode : new String[]{Grayscale.AVERAGE, Grayscale.REC601, Grayscale.REC709}) {
+            int[] pixels = {0xFFFFFFFF, 0x00FFFFFF, 0x80000000};
+            Grayscale.convert(pixels, 0, pixels.length, mode);
+            assertArrayEquals(new int[]{gray(255), gray(255), gray(0)}, pixels, mode);
+        }
+    }
+
+    @Test
+    void onlyTheGivenRangeIsConverted() {
+        int[] pixels = {RED, RED, RED, RED};
+        Grayscale.convert(pixels, 1, 3, Grayscale.AVERAGE);
+        assertEquals(RED, pixels[0]);
+        assertEquals(gray(85), pixels[1]);
+        assertEquals(RED, pixels[3]);
+    }
+
+    private static int gray(int level) {
+        return 0xFF000000 | (level << 16) | (level << 8) | level;
+    }
+}
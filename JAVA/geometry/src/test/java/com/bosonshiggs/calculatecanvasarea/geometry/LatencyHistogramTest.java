@@ -0,0 +1,101 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Bucket placement, percentiles against exact sorted ranks, and counts kept
+ * per operation under concurrent recording.
+ */
+class LatencyHistogramTest {
+
+    @Test
+    void bucketsArePowersOfTwo() {
+        assertEquals(0, LatencyHistogram.bucket(1));
+        assertEquals(1, LatencyHistogram.bucket(2));
+        assertEquals(1, LatencyHistogram.bucket(3));
+        assertEquals(10, LatencyHistogram.bucket(1024));
+        assertEquals(10, LatencyHistogram.bucket(2047));
+        assertEquals(62, LatencyHistogram.bucket(Long.MAX_VALUE));
+        for (int b = 0; b < 62; b++) {
+            assertEquals(b, LatencyHistogram.bucket(LatencyHistogram.upperBound(b)));
+            assertEquals(b + 1, LatencyHistogram.bucket(LatencyHistogram.upperBound(b) + 1));
+        }
+    }
+
+    @Test
+    void percentilesBracketTheExactRank() {
+        Random random = new Random(5);
+        LatencyHistogram histogram = new LatencyHistogram(2);
+        long[] samples = new long[5000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (long) Math.exp(8 + random.nextGaussian() * 2); // log-normal, de ns a ms
+            histogram.record(1, samples[i]);
+        }
+        Arrays.sort(samples);
+
+        for (double fraction : new double[]{0.5, 0.95, 0.99, 1.0}) {
+            long exact = Math.max(1, samples[(int) Math.ceil(samples.length * fraction) - 1]);
+            double reported = histogram.percentileMillis(1, fraction) * 1e6;
+            // O limite do bucket fica entre o valor exato e o dobro dele
+            assertTrue(reported >= exact - 1e-6 && reported < 2.0 * exact + 1, fraction + ": " + reported + " vs " + exact);
+        }
+        assertEquals(samples[samples.length - 1] / 1e6, histogram.maxMillis(1), 1e-12);
+        assertEquals(samples.length, histogram.count(1));
+        assertEquals(0, histogram.count(0));
+        assertEquals(0.0, histogram.percentileMillis(0, 0.5), 0.0);
+
+        histogram.reset();
+        assertEquals(0, histogram.count(1));
+        assertEquals(0.0, histogram.meanMillis(1), 0.0);
+        assertEquals(0.0, histogram.maxMillis(1), 0.0);
+    }
+
+    @Test
+    void percentileNeverExceedsTheMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram(1);
+        histogram.record(0, 1500);
+        histogram.record(0, 1100);
+        histogram.record(0, 0); // conta como 1 ns
+        assertEquals(1500 / 1e6, histogram.percentileMillis(0, 0.99), 1e-12);
+        assertEquals(1 / 1e6, histogram.percentileMillis(0, 0.2), 1e-12);
+        assertEquals((1500 + 1100 + 1) / 3e6, histogram.meanMillis(0), 1e-12);
+    }
+
+    @Test
+    void concurrentRecordingLosesNothing() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram(3);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 100_000; i++) histogram.record(i % 3, 1 + random.nextInt(1 << 20));
+                    histogram.record(0, 5_000_000L + seed);
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(4 * 33_334 + 4, histogram.count(0));
+        assertEquals(4 * 33_333, histogram.count(1));
+        assertEquals(4 * 33_333, histogram.count(2));
+        assertEquals(5.000003, histogram.maxMillis(0), 1e-12);
+    }
+}
@@ -0,0 +1,137 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Ordering modes on concave outlines: AsDrawn keeps the trace (and its
+ * area), Sorted recovers the outline of points seen from the lowest one in
+ * any input order, ConvexHull encloses every point. The source buffer is
+ * never modified.
+ */
+class OrderedViewTest {
+    // Um "L": côncavo, mas todo visível a partir do ponto mais baixo (0, 0)
+    private static final double[] L_SHAPE = {0, 0, 2, 0, 2, 1, 1, 1, 1, 2, 0, 2};
+
+    // Um "U": côncavo e não visível a partir do ponto mais baixo
+    private static final double[] U_SHAPE = {0, 0, 3, 0, 3, 3, 2, 3, 2, 1, 1, 1, 1, 3, 0, 3};
+
+    @Test
+    void asDrawnKeepsTheTraceAndItsConcaveArea() {
+        PointBuffer points = buffer(U_SHAPE);
+        OrderedView view = new OrderedView();
+        assertSame(points, view.of(points, OrderedView.AS_DRAWN));
+        assertEquals(7.0, AreaCalculator.calculateArea(view.of(points, OrderedView.AS_DRAWN)), 1e-12);
+    }
+
+    @Test
+    void sortedRecoversAConcaveOutlineFromShuffledPoints() {
+        double[] shuffled = {1, 2, 2, 0, 0, 2, 1, 1, 0, 0, 2, 1};
+        PointBuffer points = buffer(shuffled);
+        PointBuffer sorted = new OrderedView().of(points, OrderedView.SORTED);
+
+        assertArrayEquals(L_SHAPE, sorted.toArray());
+        assertEquals(3.0, AreaCalculator.calculateArea(sorted), 1e-12);
+        assertArrayEquals(shuffled, points.toArray()); // a fonte fica intacta
+    }
+
+    @Test
+    void sortedWalksTheFirstRayOutAndTheLastRayBack() {
+        // Pontos alinhados com o mais baixo no primeiro e no último raio
+        PointBuffer points = buffer(new double[]{0, 1, 2, 0, 1, 0, 2, 2, 0, 2, 0, 0});
+        PointBuffer sorted = new OrderedView().of(points, OrderedView.SORTED);
+
+        assertArrayEquals(new double[]{0, 0, 1, 0, 2, 0, 2, 2, 0, 2, 0, 1}, sorted.toArray());
+        assertEquals(4.0, AreaCalculator.calculateArea(sorted), 1e-12);
+    }
+
+    @Test
+    void sortedMatchesTheAtan2OrderOnRandomFans() {
+        for (int trial = 0; trial < 100; trial++) {
+            Random random = new Random(trial);
+            int n = 3 + random.nextInt(500);
+            // Leque de pontos acima do mais baixo, em ordem aleatória: poligono simples e côncavo
+            double[] angles = new double[n - 1];
+            PointBuffer points = new PointBuffer();
+            points.add(0, 0);
+            for (int i = 0; i < n - 1; i++) {
+                angles[i] = 0.01 + random.nextDouble() * (Math.PI - 0.02);
+                double radius = 10 + random.nextDouble() * 1000;
+                points.add(radius * Math.cos(angles[i]), radius * Math.sin(angles[i]));
+            }
+            PointBuffer sorted = new OrderedView().of(points, OrderedView.SORTED);
+
+            assertEquals(n, sorted.size());
+            double previous = -1;
+            for (int i = 1; i < n; i++) {
+                double angle = Math.atan2(sorted.getY(i), sorted.getX(i));
+                assertTrue(angle >= previous, "trial " + trial + ", vertex " + i);
+                previous = angle;
+            }
+        }
+    }
+
+    @Test
+    void convexHullEnclosesEveryPointOfAConcaveShape() {
+        PointBuffer points = buffer(U_SHAPE);
+        PointBuffer hull = new OrderedView().of(points, OrderedView.CONVEX_HULL);
+
+        // Só os quatro cantos; a reentrância do "U" fica de fora
+        assertArrayEquals(new double[]{0, 0, 3, 0, 3, 3, 0, 3}, hull.toArray());
+        assertEquals(9.0, AreaCalculator.calculateArea(hull), 1e-12);
+        assertEquals(3.5, AreaCalculator.calculateArea(new OrderedView().of(buffer(L_SHAPE), OrderedView.CONVEX_HULL)),
+                1e-12);
+    }
+
+    @Test
+    void convexHullIsConvexAndContainsRandomPoints() {
+        for (int trial = 0; trial < 100; trial++) {
+            Random random = new Random(trial);
+            PointBuffer points = new PointBuffer();
+            for (int i = 0, n = 3 + random.nextInt(1000); i < n; i++) {
+                // Pontos em grade grossa: muitos colineares e repetidos
+                points.add(random.nextInt(50), random.nextInt(50));
+            }
+            PointBuffer hull = new OrderedView().of(points, OrderedView.CONVEX_HULL);
+            int h = hull.size();
+            for (int i = 0; i < h; i++) {
+                int j = (i + 1) % h;
+                for (int p = 0; p < points.size(); p++) {
+                    double cross = (hull.getX(j) - hull.getX(i)) * (points.getY(p) - hull.getY(i))
+                            - (hull.getY(j) - hull.getY(i)) * (points.getX(p) - hull.getX(i));
+                    assertTrue(cross >= 0, "trial " + trial + ": point " + p + " outside edge " + i);
+                }
+                int k = (i + 2) % h;
+                double turn = (hull.getX(j) - hull.getX(i)) * (hull.getY(k) - hull.getY(j))
+                        - (hull.getY(j) - hull.getY(i)) * (hull.getX(k) - hull.getX(j));
+                assertTrue(turn > 0, "trial " + trial + ": hull not strictly convex at " + j);
+            }
+        }
+    }
+
+    @Test
+    void viewIsCachedUntilThePointsChange() {
+        PointBuffer points = buffer(L_SHAPE);
+        OrderedView view = new OrderedView();
+        PointBuffer sorted = view.of(points, OrderedView.SORTED);
+        int built = sorted.modCount();
+        view.of(points, OrderedView.SORTED);
+        assertEquals(built, sorted.modCount()); // não reconstruiu
+
+        points.add(0.5, 0.5);
+        assertEquals(7, view.of(points, OrderedView.SORTED).size());
+        assertEquals(5, view.of(points, OrderedView.CONVEX_HULL).size());
+    }
+
+    private static PointBuffer buffer(double[] xy) {
+        PointBuffer points = new PointBuffer();
+        points.addAll(xy, xy.length / 2);
+        return points;
+    }
+}
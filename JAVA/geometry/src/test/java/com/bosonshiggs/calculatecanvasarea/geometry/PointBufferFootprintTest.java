@@ -0,0 +1,49 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PointBufferFootprintTest {
+    private static final int POINTS = 1_000_000;
+    private static final long PAYLOAD = 16L * POINTS; // x e y em double
+
+    @Test
+    void millionPointsStayWithinGrowthFactorOfPayload() {
+        PointBuffer points = new PointBuffer();
+        for (int i = 0; i < POINTS; i++) points.add(i, -i);
+
+        assertEquals(POINTS, points.size());
+        // Crescimento de 1,5x: no máximo metade do payload de folga
+        assertTrue(points.footprintBytes() >= PAYLOAD);
+        assertTrue(points.footprintBytes() <= PAYLOAD * 3 / 2,
+                "footprint " + points.footprintBytes() + " bytes for " + POINTS + " points");
+        assertEquals(POINTS - 1.0, points.getX(POINTS - 1), 0.0);
+    }
+
+    @Test
+    void addingIntoReservedCapacityDoesNotAllocatePerPoint() {
+        PointBuffer points = new PointBuffer(POINTS);
+        assertEquals(PAYLOAD, points.footprintBytes());
+
+        // Aquece o caminho de add antes de medir
+        for (int i = 0; i < 10_000; i++) points.add(i, i);
+        points.clear();
+
+        long allocated = allocatedBytes();
+        for (int i = 0; i < POINTS; i++) points.add(i, i);
+        allocated = allocatedBytes() - allocated;
+
+        assertEquals(PAYLOAD, points.footprintBytes());
+        // Um double[2] por ponto seriam ~32 MB; aceita só ruído do próprio teste
+        assertTrue(allocated < 64 * 1024, allocated + " bytes allocated while adding " + POINTS + " points");
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
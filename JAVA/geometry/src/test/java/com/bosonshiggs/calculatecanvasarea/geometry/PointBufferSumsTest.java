@@ -0,0 +1,113 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*
+ * Property checks: after any sequence of edits, the running area and
+ * perimeter match the batch computation over the same points.
+ */
+class PointBufferSumsTest {
+    private static final int TRIALS = 300;
+    private static final int OPERATIONS = 400;
+
+    @Test
+    void runningSumsMatchBatchAfterRandomEdits() {
+        for (int trial = 0; trial < TRIALS; trial++) {
+            Random random = new Random(trial);
+            // Coordenadas de tela, de mapa grande e com deslocamento grande
+            double offset = random.nextInt(3) == 0 ? 1e6 : 0.0;
+            double range = random.nextBoolean() ? 800.0 : 20000.0;
+            PointBuffer points = new PointBuffer(4);
+
+            for (int op = 0; op < OPERATIONS; op++) {
+                switch (random.nextInt(10)) {
+                    case 0:
+                        points.removeLast();
+                        break;
+                    case 1:
+                        points.truncate(random.nextInt(points.size() + 1));
+                        break;
+                    case 2: {
+                        int count = 1 + random.nextInt(20);
+                        double[] xy = new double[count * 2];
+                        for (int i = 0; i < xy.length; i++) xy[i] = offset + random.nextDouble() * range;
+                        points.addAll(xy, count);
+                        break;
+                    }
+                    case 3:
+                        if (!points.isEmpty()) {
+                            points.set(random.nextInt(points.size()), offset + random.nextDouble() * range,
+                                       offset + random.nextDouble() * range);
+                        }
+                        break;
+                    case 4:
+                        if (random.nextInt(20) == 0) points.clear();
+                        break;
+                    default:
+                        points.add(offset + random.nextDouble() * range, offset + random.nextDouble() * range);
+                }
+                assertMatchesBatch(points, "trial " + trial + ", operation " + op);
+            }
+        }
+    }
+
+    @Test
+    void longAddUndoCyclesDoNotDrift() {
+        Random random = new Random(42);
+        PointBuffer points = new PointBuffer();
+        for (int i = 0; i < 1000; i++) {
+            double angle = 2 * Math.PI * i / 1000;
+            points.add(5e5 + 4e5 * Math.cos(angle), 5e5 + 4e5 * Math.sin(angle));
+        }
+        // Traçado ao vivo com desfazer: o mesmo punhado de pontos entra e sai muitas vezes
+        for (int cycle = 0; cycle < 1_000_000; cycle++) {
+            int added = 1 + random.nextInt(4);
+            for (int i = 0; i < added; i++) points.add(random.nextDouble() * 1e6, random.nextDouble() * 1e6);
+            for (int i = 0; i < added; i++) points.removeLast();
+        }
+        assertMatchesBatch(points, "after add/undo cycles");
+        // Sem compensação o erro cresce com o número de ciclos; com ela fica em poucos ulps
+        assertEquals(exactArea(points), points.closedArea(), 8 * Math.ulp(points.closedArea()));
+    }
+
+    @Test
+    void undoRestoresPreviousValues() {
+        PointBuffer points = new PointBuffer();
+        points.addAll(new double[]{0, 0, 10, 0, 10, 10, 0, 10}, 4);
+        double area = points.closedArea(), perimeter = points.closedPerimeter();
+        points.add(-5, 5);
+        points.removeLast();
+        assertEquals(area, points.closedArea(), 0.0);
+        assertEquals(perimeter, points.closedPerimeter(), 0.0);
+    }
+
+    private static double exactArea(PointBuffer points) {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (int i = 0, n = points.size(); i < n; i++) {
+            int j = (i + 1) % n;
+            sum = sum.add(new BigDecimal(points.getX(i)).multiply(new BigDecimal(points.getY(j))))
+                     .subtract(new BigDecimal(points.getX(j)).multiply(new BigDecimal(points.getY(i))));
+        }
+        return Math.abs(sum.doubleValue()) / 2.0;
+    }
+
+    private static void assertMatchesBatch(PointBuffer points, String where) {
+        int n = points.size();
+        double area = AreaCalculator.calculateArea(points);
+        double perimeter = AreaCalculator.calculatePerimeter(points);
+        // Tolerância relativa ao tamanho dos termos somados, não ao resultado (que pode ser ~0)
+        double areaScale = 0, lengthScale = 0;
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            areaScale += Math.abs(points.getX(i) * points.getY(j)) + Math.abs(points.getX(j) * points.getY(i));
+            lengthScale += Math.abs(points.getX(i)) + Math.abs(points.getY(i));
+        }
+        assertEquals(area, points.closedArea(), 1e-12 * areaScale + 1e-9, where);
+        assertEquals(n < 2 ? 0.0 : perimeter, points.closedPerimeter(), 1e-12 * lengthScale + 1e-9, where);
+    }
+}
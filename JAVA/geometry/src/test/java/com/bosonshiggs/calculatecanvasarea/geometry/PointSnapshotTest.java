@@ -0,0 +1,72 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/*
+ * PointSnapshot as the async requests use it: a copy that does not follow
+ * later edits of the live buffer, one buffer view per snapshot, and the same
+ * snapshot handed out again while the version does not change.
+ */
+class PointSnapshotTest {
+
+    @Test
+    void snapshotDoesNotFollowTheLiveBuffer() {
+        PointBuffer live = square();
+        PointSnapshot snapshot = new PointSnapshot(live, 1);
+
+        live.set(0, -50, -50);
+        live.add(300, 300);
+        live.removeLast();
+        live.removeLast();
+
+        assertEquals(4, snapshot.size());
+        assertEquals(0, snapshot.getX(0));
+        assertEquals(0, snapshot.getY(0));
+        assertEquals(100, snapshot.getX(2));
+        assertEquals(100, snapshot.getY(2));
+        assertEquals(10000, snapshot.asBuffer().closedArea(), 1e-12);
+        assertEquals(400, snapshot.asBuffer().closedPerimeter(), 1e-12);
+    }
+
+    @Test
+    void bufferViewIsBuiltOnce() {
+        PointSnapshot snapshot = new PointSnapshot(square(), 1);
+        PointBuffer buffer = snapshot.asBuffer();
+        assertSame(buffer, snapshot.asBuffer());
+        assertEquals(4, buffer.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(snapshot.getX(i), buffer.getX(i));
+            assertEquals(snapshot.getY(i), buffer.getY(i));
+        }
+    }
+
+    @Test
+    void sameVersionReusesTheSnapshot() {
+        PointBuffer live = square();
+        PointSnapshot first = PointSnapshot.of(null, live, 3);
+        assertEquals(3, first.version());
+        assertSame(first, PointSnapshot.of(first, live, 3));
+
+        // Versão nova: outra cópia, com os pontos de agora; a anterior fica como estava
+        live.add(50, 150);
+        PointSnapshot second = PointSnapshot.of(first, live, 4);
+        assertNotSame(first, second);
+        assertEquals(4, second.version());
+        assertEquals(5, second.size());
+        assertEquals(4, first.size());
+        assertSame(second, PointSnapshot.of(second, live, 4));
+    }
+
+    private static PointBuffer square() {
+        PointBuffer points = new PointBuffer();
+        points.add(0, 0);
+        points.add(100, 0);
+        points.add(100, 100);
+        points.add(0, 100);
+        return points;
+    }
+}
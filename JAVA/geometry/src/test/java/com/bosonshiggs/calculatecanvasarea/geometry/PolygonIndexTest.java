@@ -0,0 +1,78 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PolygonIndexTest {
+    @Test
+    void indexedQueriesMatchTheLinearRayCast() {
+        for (int trial = 0; trial < 50; trial++) {
+            Random random = new Random(trial);
+            int n = 3 + random.nextInt(2000);
+            PointBuffer points = new PointBuffer();
+            for (int i = 0; i < n; i++) {
+                double angle = 2 * Math.PI * i / n;
+                double radius = 100 + random.nextDouble() * 900;
+                points.add(radius * Math.cos(angle), radius * Math.sin(angle));
+            }
+            assertSameAsLinear(points, random, "trial " + trial);
+        }
+    }
+
+    @Test
+    void combWithLongTeethKeepsMemoryBounded() {
+        // Dentes verticais que cruzam quase todas as faixas: antes, cada um era copiado em todas elas
+        int teeth = 2000;
+        PointBuffer points = new PointBuffer();
+        for (int i = 0; i < teeth; i++) {
+            points.add(i * 2.0, 0);
+            points.add(i * 2.0, 1000);
+            points.add(i * 2.0 + 1, 1000);
+            points.add(i * 2.0 + 1, 10);
+        }
+        points.add(teeth * 2.0, 10);
+        points.add(teeth * 2.0, -10);
+        points.add(0, -10);
+
+        PolygonIndex index = new PolygonIndex();
+        assertTrue(index.contains(points, 0.5, 500));
+        assertFalse(index.contains(points, 1.5, 500));
+        assertTrue(index.entryCount() <= points.size() * 17,
+                index.entryCount() + " entries for " + points.size() + " edges");
+        assertSameAsLinear(points, new Random(1), "comb");
+    }
+
+    @Test
+    void rebuildsAfterEdits() {
+        PointBuffer points = new PointBuffer();
+        points.addAll(new double[]{0, 0, 10, 0, 10, 10, 0, 10}, 4);
+        PolygonIndex index = new PolygonIndex();
+        assertTrue(index.contains(points, 5, 5));
+        points.set(2, 1, 1);
+        points.set(3, 0, 1);
+        assertEquals(PolygonIndex.containsLinear(points, 5, 5), index.contains(points, 5, 5));
+        assertFalse(index.contains(points, 5, 5));
+    }
+
+    private static void assertSameAsLinear(PointBuffer points, Random random, String where) {
+        PolygonIndex index = new PolygonIndex();
+        double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < points.size(); i++) {
+            minX = Math.min(minX, points.getX(i));
+            maxX = Math.max(maxX, points.getX(i));
+            minY = Math.min(minY, points.getY(i));
+            maxY = Math.max(maxY, points.getY(i));
+        }
+        for (int q = 0; q < 2000; q++) {
+            double x = minX - 5 + random.nextDouble() * (maxX - minX + 10);
+            double y = minY - 5 + random.nextDouble() * (maxY - minY + 10);
+            assertEquals(PolygonIndex.containsLinear(points, x, y), index.contains(points, x, y),
+                    where + " at (" + x + ", " + y + ")");
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * RasterMask against the obvious per-pixel versions: a naive count with the
+ * same color test (per channel, and by gray level for whole bands), and a
+ * breadth-first 4-connected fill.
+ */
+class RasterMaskTest {
+    private static final int TILE = 256;
+    private static final int GREEN = 0xFF00C000;
+
+    @Test
+    void tiledRowScanMatchesNaivePerPixelCount() {
+        for (int trial = 0; trial < 20; trial++) {
+            Random random = new Random(trial);
+            int width = 1 + random.nextInt(700), height = 1 + random.nextInt(300);
+            int tolerance = random.nextInt(40);
+            int[] image = image(random, width, height);
+
+            // Como o RasterScan: tile por tile, em linhas lidas de um buffer
+            RasterMask mask = new RasterMask(width, height);
+            int[] pixels = new int[TILE];
+            long count = 0;
+            for (int y = 0; y < height; y++) {
+                for (int x0 = 0; x0 < width; x0 += TILE) {
+                    int w = Math.min(TILE, width - x0);
+                    System.arraycopy(image, y * width + x0, pixels, 0, w);
+                    count += mask.scanRow(pixels, 0, x0, y, w, GREEN, tolerance);
+                }
+            }
+
+            long naive = 0;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    boolean match = naiveMatches(image[y * width + x], GREEN, tolerance);
+                    if (match) naive++;
+                    assertEquals(match, mask.isSet(x, y), "trial " + trial + " at " + x + "," + y);
+                }
+            }
+            assertEquals(naive, count, "trial " + trial);
+            assertEquals(naive, RasterMask.countMatches(image, 0, image.length, GREEN, tolerance), "trial " + trial);
+        }
+    }
+
+    @Test
+    void bandScanMatchesPerPixelGrayLevels() {
+        for (int trial = 0; trial < 10; trial++) {
+            Random random = new Random(50 + trial);
+            int width = 1 + random.nextInt(700), height = 1 + random.nextInt(100);
+            int tolerance = random.nextInt(20);
+            int[] image = image(random, width, height);
+            int[] gray = {GREEN};
+            Grayscale.convert(gray, 0, 1, Grayscale.REC601);
+
+            // Bandas de 32 linhas por tile, como o RasterScan
+            RasterMask mask = new RasterMask(width, height);
+            int[] pixels = new int[TILE * 32];
+            long count = 0;
+            for (int y0 = 0; y0 < height; y0 += 32) {
+                int rows = Math.min(32, height - y0);
+                for (int x0 = 0; x0 < width; x0 += TILE) {
+                    int w = Math.min(TILE, width - x0);
+                    for (int r = 0; r < rows; r++) System.arraycopy(image, (y0 + r) * width + x0, pixels, r * w, w);
+                    count += mask.scanBand(pixels, x0, y0, w, rows, gray[0], tolerance, Grayscale.REC601);
+                }
+            }
+
+            long naive = 0;
+            int[] pixel = new int[1];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    pixel[0] = image[y * width + x];
+                    Grayscale.convert(pixel, 0, 1, Grayscale.REC601);
+                    boolean match = naiveMatches(pixel[0], gray[0], tolerance);
+                    if (match) naive++;
+                    assertEquals(match, mask.isSet(x, y), "trial " + trial + " at " + x + "," + y);
+                }
+            }
+            assertEquals(naive, count, "trial " + trial);
+        }
+    }
+
+    @Test
+    void runsMarkWholeRowsOfUndrawnTiles() {
+        RasterMask mask = new RasterMask(300, 2);
+        mask.setRun(1, 256, 44);
+        for (int x = 0; x < 300; x++) {
+            assertEquals(false, mask.isSet(x, 0));
+            assertEquals(x >= 256, mask.isSet(x, 1));
+        }
+    }
+
+    @Test
+    void floodFillMatchesBreadthFirstFill() {
+        for (int trial = 0; trial < 40; trial++) {
+            Random random = new Random(100 + trial);
+            int width = 1 + random.nextInt(300), height = 1 + random.nextInt(200);
+            // Máscara aleatória densa: muitas regiões, reentrâncias e buracos
+            boolean[] open = new boolean[width * height];
+            RasterMask mask = new RasterMask(width, height);
+            int[] row = new int[width];
+            double density = 0.45 + random.nextDouble() * 0.3;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    open[y * width + x] = random.nextDouble() < density;
+                    row[x] = open[y * width + x] ? GREEN : 0;
+                }
+                mask.scanRow(row, 0, 0, y, width, GREEN, 0);
+            }
+
+            for (int seed = 0; seed < 5; seed++) {
+                int sx = random.nextInt(width), sy = random.nextInt(height);
+                boolean[] expected = breadthFirstFill(open, width, height, sx, sy);
+                long expectedCount = 0;
+                for (boolean b : expected) if (b) expectedCount++;
+
+                assertEquals(expectedCount, mask.floodFill(sx, sy), "trial " + trial + ", seed " + sx + "," + sy);
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        assertEquals(expected[y * width + x], mask.isFilled(x, y), "trial " + trial + " at " + x + "," + y);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void fillOfAShapeWithAHoleCountsOnlyTheRing() {
+        // Quadrado de 100x100 com um furo de 20x20 no meio
+        int size = 120;
+        RasterMask mask = new RasterMask(size, size);
+        int[] row = new int[size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                boolean inSquare = x >= 10 && x < 110 && y >= 10 && y < 110;
+                boolean inHole = x >= 50 && x < 70 && y >= 50 && y < 70;
+                row[x] = inSquare && !inHole ? GREEN : 0xFFFFFFFF;
+            }
+            mask.scanRow(row, 0, 0, y, size, GREEN, 10);
+        }
+        assertEquals(100 * 100 - 20 * 20, mask.floodFill(10, 10));
+        assertTrue(mask.isFilled(109, 109));
+        assertEquals(false, mask.isFilled(60, 60));
+        assertEquals(0, mask.floodFill(60, 60)); // semente fora da cor
+    }
+
+    // Verde em manchas com ruído, transparente e outras cores
+    private static int[] image(Random random, int width, int height) {
+        int[] image = new int[width * height];
+        for (int i = 0; i < image.length; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    image[i] = 0;
+                    break;
+                case 1:
+                    image[i] = random.nextInt();
+                    break;
+                default:
+                    int jitter = random.nextInt(60) - 30;
+                    image[i] = 0xFF000000 | (Math.max(0, jitter) << 16) | ((0xC0 + jitter) << 8) | Math.max(0, -jitter);
+            }
+        }
+        return image;
+    }
+
+    private static boolean naiveMatches(int pixel, int color, int tolerance) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            int a = (pixel >>> shift) & 0xFF, b = (color >>> shift) & 0xFF;
+            if (Math.abs(a - b) > tolerance) return false;
+        }
+        return true;
+    }
+
+    private static boolean[] breadthFirstFill(boolean[] open, int width, int height, int sx, int sy) {
+        boolean[] filled = new boolean[open.length];
+        if (!open[sy * width + sx]) return filled;
+        ArrayDeque<int[]> queue = new ArrayDeque<>();
+        filled[sy * width + sx] = true;
+        queue.add(new int[]{sx, sy});
+        int[][] steps = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+        while (!queue.isEmpty()) {
+            int[] p = queue.poll();
+            for (int[] step : steps) {
+                int x = p[0] + step[0], y = p[1] + step[1];
+                if (x < 0 || y < 0 || x >= width || y >= height) continue;
+                int i = y * width + x;
+                if (open[i] && !filled[i]) {
+                    filled[i] = true;
+                    queue.add(new int[]{x, y});
+                }
+            }
+        }
+        return filled;
+    }
+}
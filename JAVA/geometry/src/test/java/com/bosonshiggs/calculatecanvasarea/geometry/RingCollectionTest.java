@@ -0,0 +1,158 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * RingCollection against the plain definitions: the total area is the sum of
+ * every outer ring minus every hole, recomputed ring by ring, and a point is
+ * inside when some outer ring contains it and no hole does.
+ */
+class RingCollectionTest {
+
+    @Test
+    void totalAreaFollowsEditsSelectionAndHoles() {
+        for (int trial = 0; trial < 50; trial++) {
+            Random random = new Random(trial);
+            RingCollection rings = new RingCollection();
+            for (int op = 0; op < 400; op++) {
+                int[] ids = rings.ids();
+                switch (random.nextInt(10)) {
+                    case 0:
+                        rings.addRing(random.nextInt(3) == 0);
+                        break;
+                    case 1:
+                        rings.select(ids[random.nextInt(ids.length)]);
+                        break;
+                    case 2:
+                        if (random.nextInt(4) == 0) rings.remove(ids[random.nextInt(ids.length)]);
+                        break;
+                    case 3:
+                        rings.setHole(ids[random.nextInt(ids.length)], random.nextBoolean());
+                        break;
+                    case 4:
+                        rings.selectedPoints().removeLast();
+                        break;
+                    default:
+                        rings.selectedPoints().add(random.nextDouble() * 500, random.nextDouble() * 500);
+                }
+                assertEquals(naiveTotalArea(rings), rings.totalArea(), 1e-6, "trial " + trial + ", operation " + op);
+            }
+        }
+    }
+
+    @Test
+    void holesAreSubtractedAndExcludedFromHitTests() {
+        RingCollection rings = new RingCollection();
+        int outer = rings.selectedId();
+        square(rings.selectedPoints(), 0, 0, 100);
+        int hole = rings.addRing(true);
+        square(rings.selectedPoints(), 40, 40, 20);
+        int second = rings.addRing(false);
+        square(rings.selectedPoints(), 200, 0, 10);
+
+        assertEquals(100 * 100 - 20 * 20 + 10 * 10, rings.totalArea(), 1e-9);
+        assertTrue(rings.containsPoint(10, 10));
+        assertFalse(rings.containsPoint(50, 50)); // no furo
+        assertTrue(rings.containsPoint(205, 5));
+        assertFalse(rings.containsPoint(150, 50)); // fora de todas as caixas
+
+        // O furo deixa de ser furo: soma em vez de subtrair, e o ponto volta a estar dentro
+        rings.setHole(hole, false);
+        assertEquals(100 * 100 + 20 * 20 + 10 * 10, rings.totalArea(), 1e-9);
+        assertTrue(rings.containsPoint(50, 50));
+
+        rings.remove(second);
+        assertEquals(outer, rings.ids()[0]);
+        assertEquals(100 * 100 + 20 * 20, rings.totalArea(), 1e-9);
+    }
+
+    @Test
+    void boundsAreRebuiltWhenTheRingChanges() {
+        RingCollection rings = new RingCollection();
+        int id = rings.selectedId();
+        assertNull(rings.bounds(id));
+        PointBuffer points = rings.selectedPoints();
+        points.add(10, 20);
+        points.add(30, 5);
+        assertArrayEquals(new double[]{10, 5, 30, 20}, rings.bounds(id));
+
+        points.add(-4, 50);
+        assertArrayEquals(new double[]{-4, 5, 30, 50}, rings.bounds(id));
+        assertTrue(rings.containsPoint(12, 25)); // centroide do triângulo
+        assertFalse(rings.containsPoint(-5, 60)); // fora da nova caixa
+        points.removeLast();
+        assertArrayEquals(new double[]{10, 5, 30, 20}, rings.bounds(id));
+        points.set(0, 0, 0);
+        assertArrayEquals(new double[]{0, 0, 30, 5}, rings.bounds(id));
+        assertNull(rings.bounds(id + 100));
+    }
+
+    @Test
+    void removingTheSelectedRingSelectsAnotherOrAFreshOne() {
+        RingCollection rings = new RingCollection();
+        int first = rings.selectedId();
+        int second = rings.addRing(false);
+        assertEquals(second, rings.selectedId());
+        assertTrue(rings.remove(second));
+        assertEquals(first, rings.selectedId());
+        assertTrue(rings.remove(first));
+        assertEquals(1, rings.size());
+        assertTrue(rings.selectedId() > second);
+        assertFalse(rings.remove(first));
+        assertFalse(rings.select(first));
+    }
+
+    @Test
+    void restoreKeepsIdsSelectionAndArea() {
+        RingCollection rings = new RingCollection();
+        rings.addRing(false);
+        rings.beginRestore();
+        square(rings.restoreRing(7, false), 0, 0, 10);
+        square(rings.restoreRing(3, true), 2, 2, 2);
+        square(rings.restoreRing(12, false), 50, 50, 5);
+        rings.endRestore(3);
+
+        assertArrayEquals(new int[]{7, 3, 12}, rings.ids());
+        assertEquals(3, rings.selectedId());
+        assertTrue(rings.isHole(3));
+        assertEquals(100 - 4 + 25, rings.totalArea(), 1e-9);
+        assertEquals(13, rings.addRing(false)); // ids novos continuam depois do maior restaurado
+
+        // Seleção salva inexistente: fica o primeiro anel
+        rings.beginRestore();
+        square(rings.restoreRing(4, false), 0, 0, 3);
+        rings.endRestore(99);
+        assertEquals(4, rings.selectedId());
+        assertEquals(9, rings.totalArea(), 1e-9);
+
+        // Conjunto vazio: um anel novo e vazio
+        rings.beginRestore();
+        rings.endRestore(1);
+        assertEquals(1, rings.size());
+        assertEquals(0.0, rings.totalArea(), 0.0);
+    }
+
+    private static void square(PointBuffer points, double x, double y, double side) {
+        points.add(x, y);
+        points.add(x + side, y);
+        points.add(x + side, y + side);
+        points.add(x, y + side);
+    }
+
+    private static double naiveTotalArea(RingCollection rings) {
+        double total = 0;
+        for (int id : rings.ids()) {
+            double area = rings.points(id).closedArea();
+            total += rings.isHole(id) ? -area : area;
+        }
+        return Math.max(0.0, total);
+    }
+}
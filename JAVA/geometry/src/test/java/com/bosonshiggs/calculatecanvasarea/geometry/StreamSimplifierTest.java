@@ -0,0 +1,122 @@
+package com.bosonshiggs.calculatecanvasarea.geometry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * The simplifier's guarantees on random traces: every raw sample stays
+ * within the tolerance of the stored polyline, so the area error is bounded
+ * by tolerance x (raw plus stored perimeter), and areaError() reports that
+ * error exactly.
+ */
+class StreamSimplifierTest {
+    private static final double[] TOLERANCES = {0.5, 1.5, 4.0};
+
+    @Test
+    void everySampleStaysWithinToleranceOfThePolyline() {
+        for (int trial = 0; trial < 60; trial++) {
+            Random random = new Random(trial);
+            double tolerance = TOLERANCES[trial % TOLERANCES.length];
+            double[] raw = trace(random, 500 + random.nextInt(3000));
+            PointBuffer points = simplify(raw, tolerance);
+
+            for (int i = 0; i < raw.length; i += 2) {
+                double distance = distanceToPolyline(points, raw[i], raw[i + 1]);
+                assertTrue(distance <= tolerance + 1e-9,
+                        "trial " + trial + ": sample " + i / 2 + " is " + distance + " px away");
+            }
+        }
+    }
+
+    @Test
+    void areaErrorIsBoundedAndReportedExactly() {
+        for (int trial = 0; trial < 60; trial++) {
+            Random random = new Random(1000 + trial);
+            double tolerance = TOLERANCES[trial % TOLERANCES.length];
+            double[] raw = trace(random, 500 + random.nextInt(3000));
+            StreamSimplifier simplifier = new StreamSimplifier();
+            simplifier.setTolerance(tolerance);
+            PointBuffer points = new PointBuffer();
+            for (int i = 0; i < raw.length; i += 2) simplifier.add(points, raw[i], raw[i + 1]);
+
+            PointBuffer rawPoints = new PointBuffer();
+            rawPoints.addAll(raw, raw.length / 2);
+            double error = Math.abs(rawPoints.signedArea() - points.signedArea());
+            assertEquals(error, simplifier.areaError(points), 1e-6 * (1 + rawPoints.closedArea()), "trial " + trial);
+            assertEquals(raw.length / 2, simplifier.rawCount(points));
+
+            // Cada amostra fica a no máximo 'tolerance' do contorno guardado (fechamento incluso)
+            double bound = tolerance * (rawPoints.closedPerimeter() + AreaCalculator.calculatePerimeter(points));
+            assertTrue(error <= bound, "trial " + trial + ": error " + error + " > " + bound);
+        }
+    }
+
+    @Test
+    void slowTracesLoseMostOfTheirVertices() {
+        double[] raw = trace(new Random(7), 10_000);
+        PointBuffer points = simplify(raw, 1.5);
+        assertTrue(points.size() * 10 < raw.length / 2, points.size() + " of " + raw.length / 2 + " vertices kept");
+    }
+
+    @Test
+    void keepsCornersWellAboveTheTolerance() {
+        // Quadrado com lados muito maiores que a tolerância: os cantos ficam
+        PointBuffer points = new PointBuffer();
+        StreamSimplifier simplifier = new StreamSimplifier();
+        simplifier.setTolerance(1.0);
+        double[] corners = {0, 0, 100, 0, 100, 100, 0, 100};
+        for (int side = 0; side < 4; side++) {
+            double x0 = corners[side * 2], y0 = corners[side * 2 + 1];
+            double x1 = corners[(side * 2 + 2) % 8], y1 = corners[(side * 2 + 3) % 8];
+            for (int step = 0; step < 50; step++) {
+                simplifier.add(points, x0 + (x1 - x0) * step / 50, y0 + (y1 - y0) * step / 50);
+            }
+        }
+        // Os quatro cantos e a última amostra, que fica no lado de fechamento
+        assertEquals(5, points.size());
+        assertEquals(0.0, points.getX(4), 0.0);
+        assertEquals(10_000.0, points.closedArea(), 1e-9);
+    }
+
+    // Traço lento de mão: passos curtos, direção que muda devagar e tremor de ~0,3 px
+    private static double[] trace(Random random, int samples) {
+        double[] xy = new double[samples * 2];
+        double x = 500, y = 500, heading = random.nextDouble() * 2 * Math.PI;
+        for (int i = 0; i < samples; i++) {
+            heading += random.nextGaussian() * 0.05;
+            double step = 0.5 + random.nextDouble() * 2;
+            x += step * Math.cos(heading);
+            y += step * Math.sin(heading);
+            xy[i * 2] = x + random.nextGaussian() * 0.3;
+            xy[i * 2 + 1] = y + random.nextGaussian() * 0.3;
+        }
+        return xy;
+    }
+
+    private static PointBuffer simplify(double[] raw, double tolerance) {
+        StreamSimplifier simplifier = new StreamSimplifier();
+        simplifier.setTolerance(tolerance);
+        PointBuffer points = new PointBuffer();
+        for (int i = 0; i < raw.length; i += 2) simplifier.add(points, raw[i], raw[i + 1]);
+        return points;
+    }
+
+    // Distância à poligonal aberta guardada
+    private static double distanceToPolyline(PointBuffer points, double x, double y) {
+        double best = Math.hypot(x - points.getX(0), y - points.getY(0));
+        for (int i = 1; i < points.size(); i++) {
+            double ax = points.getX(i - 1), ay = points.getY(i - 1);
+            double bx = points.getX(i), by = points.getY(i);
+            double dx = bx - ax, dy = by - ay;
+            double lengthSquared = dx * dx + dy * dy;
+            double t = lengthSquared == 0 ? 0 : ((x - ax) * dx + (y - ay) * dy) / lengthSquared;
+            t = Math.max(0, Math.min(1, t));
+            best = Math.min(best, Math.hypot(x - (ax + t * dx), y - (ay + t * dy)));
+        }
+        return best;
+    }
+}